@@ -0,0 +1,36 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+/**
+ * A trade listener that is called on a worker thread instead of during the
+ * click of the customer. The events of a {@link Merchant} are received in
+ * the order of the trades, the events of different merchants may be
+ * received in parallel.
+ */
+public interface AsyncMerchantTradeListener {
+
+    /**
+     * Called when a customer traded an item with the {@link Merchant}.
+     *
+     * @param event The trade event
+     */
+    void onTrade(MerchantTradeEvent event);
+
+}
@@ -21,11 +21,29 @@ package me.cybermaxke.merchants.api;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 import org.bukkit.entity.Player;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A merchant that players can trade with.
+ *
+ * <p>A merchant can be read and modified from any thread. Modifications that
+ * are done off the main thread are queued and applied on the main thread
+ * during the next tick, all at once.</p>
+ */
 public interface Merchant {
 
+    /**
+     * Gets the unique id of the merchant.
+     *
+     * @return The unique id
+     */
+    UUID getUniqueId();
+
     /**
      * Gets the title of the merchant.
      *
@@ -78,6 +96,52 @@ public interface Merchant {
      */
     Collection<MerchantTradeListener> getListeners();
 
+    /**
+     * Adds the {@link AsyncMerchantTradeListener} to the merchant.
+     *
+     * @param listener The listener
+     * @return {@code true} if not added before
+     */
+    boolean addAsyncListener(AsyncMerchantTradeListener listener);
+
+    /**
+     * Removes the {@link AsyncMerchantTradeListener} from the merchant.
+     *
+     * @param listener The listener
+     * @return {@code true} if added before
+     */
+    boolean removeAsyncListener(AsyncMerchantTradeListener listener);
+
+    /**
+     * Gets the {@link AsyncMerchantTradeListener}s of the merchant.
+     *
+     * @return The async trade listeners
+     */
+    Collection<AsyncMerchantTradeListener> getAsyncListeners();
+
+    /**
+     * Adds the {@link MerchantTradeBatchListener} to the merchant.
+     *
+     * @param listener The listener
+     * @return {@code true} if not added before
+     */
+    boolean addBatchListener(MerchantTradeBatchListener listener);
+
+    /**
+     * Removes the {@link MerchantTradeBatchListener} from the merchant.
+     *
+     * @param listener The listener
+     * @return {@code true} if added before
+     */
+    boolean removeBatchListener(MerchantTradeBatchListener listener);
+
+    /**
+     * Gets the {@link MerchantTradeBatchListener}s of the merchant.
+     *
+     * @return The batch trade listeners
+     */
+    Collection<MerchantTradeBatchListener> getBatchListeners();
+
     /**
      * Adds a new {@link MerchantOffer} to the merchant.
      *
@@ -92,6 +156,16 @@ public interface Merchant {
      */
     void addOffers(Iterable<MerchantOffer> offers);
 
+    /**
+     * Adds the {@link MerchantOffer}s to the merchant asynchronously. The
+     * offer list is encoded on a worker thread, only the offers are added
+     * on the main thread.
+     *
+     * @param offers The offers
+     * @return The future that completes once the offers are added
+     */
+    ListenableFuture<Void> addOffersAsync(Iterable<MerchantOffer> offers);
+
     /**
      * Sorts all the {@link MerchantOffer}s of the merchant.
      *
@@ -151,6 +225,33 @@ public interface Merchant {
      */
     void insetOfferAt(int index, MerchantOffer offer);
 
+    /**
+     * Gets the uses of the {@link MerchantOffer} in this merchant, these are
+     * the uses of the offer unless this merchant counts its own uses of it.
+     *
+     * @param offer The offer
+     * @return The uses
+     */
+    int getUses(MerchantOffer offer);
+
+    /**
+     * Sets the uses of the {@link MerchantOffer} in this merchant only, the
+     * other merchants with the offer keep their uses. The trades with this
+     * merchant are counted by it from now on, until the offer is removed.
+     *
+     * @param offer The offer
+     * @param uses The uses
+     */
+    void setUses(MerchantOffer offer, int uses);
+
+    /**
+     * Creates a new {@link MerchantEditor} to change multiple things of
+     * the merchant at once. Nothing will change until the editor is applied.
+     *
+     * @return The editor
+     */
+    MerchantEditor edit();
+
     /**
      * Adds a customer to the merchant.
      *
@@ -159,6 +260,37 @@ public interface Merchant {
      */
     boolean addCustomer(Player player);
 
+    /**
+     * Adds a customer to the merchant asynchronously. The offer list is
+     * encoded on a worker thread, only the window is opened on the main
+     * thread.
+     *
+     * @param player The player
+     * @return The future that completes with {@code true} if not a customer before
+     */
+    ListenableFuture<Boolean> openAsync(Player player);
+
+    /**
+     * Adds the players as customers to the merchant. The offer list is
+     * encoded once and shared by all the players, unless the offers have
+     * uses per customer.
+     *
+     * @param players The players
+     * @return The players that weren't customers before and whose window was opened
+     */
+    Set<Player> addCustomers(Collection<Player> players);
+
+    /**
+     * Adds the players as customers to the merchant, spread over multiple
+     * ticks to avoid opening a lot of windows during the same tick. The
+     * players that are offline by the time their turn comes are skipped.
+     *
+     * @param players The players
+     * @param perTick The maximum amount of windows to open every tick
+     * @return The future that completes with the players whose window was opened
+     */
+    ListenableFuture<Set<Player>> addCustomers(Collection<Player> players, int perTick);
+
     /**
      * Removes a customer from the merchant.
      *
@@ -182,4 +314,28 @@ public interface Merchant {
      */
     Collection<Player> getCustomers();
 
+    /**
+     * Gets whether the changes to the offers are send immediately to
+     * the customers. By default are all the changes that happen during
+     * a tick collected and send once at the end of the tick.
+     *
+     * @return Whether the updates are send immediately
+     */
+    boolean hasImmediateUpdates();
+
+    /**
+     * Sets whether the changes to the offers should be send immediately
+     * to the customers, instead of once at the end of the tick.
+     *
+     * @param immediate Whether the updates should be send immediately
+     */
+    void setImmediateUpdates(boolean immediate);
+
+    /**
+     * Takes a {@link MerchantSnapshot} of the merchant on a worker thread.
+     *
+     * @return The future of the snapshot
+     */
+    ListenableFuture<MerchantSnapshot> snapshotAsync();
+
 }
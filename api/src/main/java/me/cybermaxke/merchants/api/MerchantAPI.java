@@ -18,10 +18,17 @@
  */
 package me.cybermaxke.merchants.api;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
 import javax.annotation.Nullable;
 
 import org.bukkit.inventory.ItemStack;
 
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+
 public interface MerchantAPI {
 
     /**
@@ -41,6 +48,36 @@ public interface MerchantAPI {
      */
     Merchant newMerchant(String title, boolean jsonTitle);
 
+    /**
+     * Creates a new {@link Merchant} with the specified unique id and title,
+     * the unique id can be used to recreate a merchant that was stored.
+     *
+     * @param uniqueId The unique id
+     * @param title The title
+     * @param jsonTitle Title in json format
+     * @return The merchant
+     */
+    Merchant newMerchant(UUID uniqueId, String title, boolean jsonTitle);
+
+    /**
+     * Creates a new {@link MerchantTemplate} with the specified title and offers.
+     *
+     * @param title The title
+     * @param offers The offers
+     * @return The template
+     */
+    MerchantTemplate newTemplate(String title, Iterable<MerchantOffer> offers);
+
+    /**
+     * Creates a new {@link MerchantTemplate} with the specified title and offers.
+     *
+     * @param title The title
+     * @param jsonTitle Title in json format
+     * @param offers The offers
+     * @return The template
+     */
+    MerchantTemplate newTemplate(String title, boolean jsonTitle, Iterable<MerchantOffer> offers);
+
     /**
      * Creates a new {@link MerchantOffer} with the trade items.
      *
@@ -60,4 +97,77 @@ public interface MerchantAPI {
      */
     MerchantOffer newOffer(ItemStack result, ItemStack firstItem);
 
+    /**
+     * Creates new {@link MerchantOffer}s from the offer snapshots on a worker
+     * thread. The items are validated and copied like {@link #newOffer}.
+     *
+     * @param offers The offer snapshots
+     * @return The future of the offers
+     */
+    ListenableFuture<List<MerchantOffer>> newOffersAsync(Iterable<MerchantSnapshot.Offer> offers);
+
+    /**
+     * Adds the {@link MerchantTradeBatchListener} that receives
+     * the trades of all the merchants.
+     *
+     * @param listener The listener
+     * @return {@code true} if not added before
+     */
+    boolean addBatchListener(MerchantTradeBatchListener listener);
+
+    /**
+     * Removes the {@link MerchantTradeBatchListener} that receives
+     * the trades of all the merchants.
+     *
+     * @param listener The listener
+     * @return {@code true} if added before
+     */
+    boolean removeBatchListener(MerchantTradeBatchListener listener);
+
+    /**
+     * Gets the {@link MerchantTradeBatchListener}s that receive
+     * the trades of all the merchants.
+     *
+     * @return The batch trade listeners
+     */
+    Collection<MerchantTradeBatchListener> getBatchListeners();
+
+    /**
+     * Gets the amount of trade events that are waiting to be passed
+     * to the {@link AsyncMerchantTradeListener}s.
+     *
+     * @return The amount of queued trades
+     */
+    int getQueuedTrades();
+
+    /**
+     * Gets the amount of trade events that were dropped because
+     * the queue of the {@link AsyncMerchantTradeListener}s was full.
+     *
+     * @return The amount of dropped trades
+     */
+    long getDroppedTrades();
+
+    /**
+     * Gets the {@link MerchantTradeJournal} that records all the trades,
+     * this is only present if the journal is enabled in the config.
+     *
+     * @return The trade journal
+     */
+    Optional<MerchantTradeJournal> getTradeJournal();
+
+    /**
+     * Gets the {@link MerchantPersistence} that stores and restores merchants.
+     *
+     * @return The persistence
+     */
+    MerchantPersistence getPersistence();
+
+    /**
+     * Gets the {@link MerchantRegistry} that keeps track of the merchants by their ids.
+     *
+     * @return The registry
+     */
+    MerchantRegistry getRegistry();
+
 }
@@ -0,0 +1,135 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+import java.util.Comparator;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Collects changes to a {@link Merchant} and applies them all at once,
+ * the customers will only receive the resulting offers. The changes are
+ * applied to the offers that the merchant has when {@link #apply()} is
+ * called, not when the editor was created.
+ */
+public interface MerchantEditor {
+
+    /**
+     * Sets the title of the merchant.
+     *
+     * @param title The title
+     * @param jsonTitle Whether the title is in json format
+     * @return This editor, for chaining
+     */
+    MerchantEditor setTitle(String title, boolean jsonTitle);
+
+    /**
+     * Sets the title of the merchant.
+     *
+     * @param title The title
+     * @return This editor, for chaining
+     */
+    MerchantEditor setTitle(String title);
+
+    /**
+     * Adds the {@link MerchantOffer} to the merchant, if not added before.
+     *
+     * @param offer The offer
+     * @return This editor, for chaining
+     */
+    MerchantEditor addOffer(MerchantOffer offer);
+
+    /**
+     * Adds the {@link MerchantOffer}s to the merchant, if not added before.
+     *
+     * @param offers The offers
+     * @return This editor, for chaining
+     */
+    MerchantEditor addOffers(Iterable<MerchantOffer> offers);
+
+    /**
+     * Inserts the {@link MerchantOffer} at the index. The index may be
+     * equal to the amount of offers to add it at the end.
+     *
+     * @param index The index
+     * @param offer The offer
+     * @return This editor, for chaining
+     */
+    MerchantEditor insertOfferAt(int index, MerchantOffer offer);
+
+    /**
+     * Sets the {@link MerchantOffer} at the index.
+     *
+     * @param index The index
+     * @param offer The offer
+     * @return This editor, for chaining
+     */
+    MerchantEditor setOfferAt(int index, MerchantOffer offer);
+
+    /**
+     * Removes the specified {@link MerchantOffer} from the merchant.
+     *
+     * @param offer The offer
+     * @return This editor, for chaining
+     */
+    MerchantEditor removeOffer(MerchantOffer offer);
+
+    /**
+     * Removes all the specified {@link MerchantOffer}s from the merchant.
+     *
+     * @param offers The offers
+     * @return This editor, for chaining
+     */
+    MerchantEditor removeOffers(Iterable<MerchantOffer> offers);
+
+    /**
+     * Removes all the {@link MerchantOffer}s that match the predicate.
+     *
+     * @param predicate The predicate
+     * @return This editor, for chaining
+     */
+    MerchantEditor removeOffersIf(Predicate<MerchantOffer> predicate);
+
+    /**
+     * Removes all the {@link MerchantOffer}s from the merchant.
+     *
+     * @return This editor, for chaining
+     */
+    MerchantEditor clearOffers();
+
+    /**
+     * Sorts all the {@link MerchantOffer}s of the merchant.
+     *
+     * @param comparator The comparator
+     * @return This editor, for chaining
+     */
+    MerchantEditor sortOffers(Comparator<MerchantOffer> comparator);
+
+    /**
+     * Applies all the changes to the merchant, in the order they were
+     * made. If one of the changes fails, for example because a index is
+     * out of bounds, will the merchant not be modified at all.
+     *
+     * <p>
+     * The editor keeps its changes, so it can be applied again.
+     * </p>
+     */
+    void apply();
+
+}
@@ -18,6 +18,8 @@
  */
 package me.cybermaxke.merchants.api;
 
+import java.util.UUID;
+
 import org.bukkit.inventory.ItemStack;
 
 import com.google.common.base.Optional;
@@ -105,6 +107,59 @@ public interface MerchantOffer {
      */
     boolean isLocked();
 
+    /**
+     * Gets whether every customer has its own uses of the offer. The
+     * maximum uses are then the limit of every customer on its own, and
+     * every customer only sees its own uses.
+     *
+     * @return Whether the customers have their own uses
+     */
+    boolean hasCustomerUses();
+
+    /**
+     * Sets whether every customer should have its own uses of the offer.
+     * Disabling this will forget the uses of all the customers.
+     *
+     * @param customerUses Whether the customers have their own uses
+     */
+    void setCustomerUses(boolean customerUses);
+
+    /**
+     * Gets the current amount of uses of the customer. If the customers
+     * don't have their own uses, are the shared uses returned.
+     *
+     * @param customer The unique id of the customer
+     * @return The amount uses
+     */
+    int getUses(UUID customer);
+
+    /**
+     * Sets the amount of uses of the customer. If the customers don't
+     * have their own uses, are the shared uses set.
+     *
+     * @param customer The unique id of the customer
+     * @param uses The uses
+     */
+    void setUses(UUID customer, int uses);
+
+    /**
+     * Adds the uses amount to the current uses of the customer. If the
+     * customers don't have their own uses, are the shared uses increased.
+     *
+     * @param customer The unique id of the customer
+     * @param uses The uses
+     */
+    void addUses(UUID customer, int uses);
+
+    /**
+     * Gets whether the offer is locked for the customer.
+     *
+     * @param customer The unique id of the customer
+     * @return Is locked
+     * @see #isLocked()
+     */
+    boolean isLocked(UUID customer);
+
     /**
      * Clones the merchant offer.
      *
@@ -0,0 +1,85 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Stores {@link Merchant}s in a compact binary format and restores them.
+ * The items are encoded and decoded on worker threads, only taking the
+ * snapshots and creating the merchants is done on the main thread.
+ */
+public interface MerchantPersistence {
+
+    /**
+     * Writes the merchants to the stream. The snapshots of the merchants
+     * are taken immediately, so this should be called on the main thread.
+     * The stream is closed once everything is written.
+     *
+     * @param out The output stream
+     * @param merchants The merchants
+     * @param compress Whether the data should be compressed
+     * @return The future that completes once everything is written
+     */
+    ListenableFuture<Void> save(OutputStream out, Iterable<? extends Merchant> merchants, boolean compress);
+
+    /**
+     * Writes the merchant snapshots to the stream. The stream
+     * is closed once everything is written.
+     *
+     * @param out The output stream
+     * @param snapshots The snapshots
+     * @param compress Whether the data should be compressed
+     * @return The future that completes once everything is written
+     */
+    ListenableFuture<Void> saveSnapshots(OutputStream out, Iterable<MerchantSnapshot> snapshots, boolean compress);
+
+    /**
+     * Reads the merchant snapshots from the stream. The stream is
+     * closed once everything is read.
+     *
+     * @param in The input stream
+     * @return The future of the snapshots
+     */
+    ListenableFuture<List<MerchantSnapshot>> loadSnapshots(InputStream in);
+
+    /**
+     * Reads the merchants from the stream and creates them on the main
+     * thread, the future completes on the main thread. The stream is
+     * closed once everything is read.
+     *
+     * @param in The input stream
+     * @return The future of the merchants
+     */
+    ListenableFuture<List<Merchant>> load(InputStream in);
+
+    /**
+     * Creates a new {@link Merchant} with the state of the snapshot,
+     * this must be called on the main thread.
+     *
+     * @param snapshot The snapshot
+     * @return The merchant
+     */
+    Merchant restore(MerchantSnapshot snapshot);
+
+}
@@ -0,0 +1,193 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Keeps track of the {@link Merchant}s by their unique ids. Merchants that
+ * are created with {@link MerchantAPI#newMerchant(String)} aren't registered
+ * by default, they can be registered with {@link #register(Merchant)}.
+ *
+ * <p>The registry can be read and modified from any thread, the merchants
+ * themselves should still only be used on the main thread.</p>
+ */
+public interface MerchantRegistry extends Iterable<Merchant> {
+
+    /**
+     * Gets the unique id that belongs to the stable id, this
+     * will always return the same unique id for the same id.
+     *
+     * @param id The id
+     * @return The unique id
+     */
+    UUID getUniqueId(String id);
+
+    /**
+     * Gets the merchant with the stable id, or creates and registers
+     * a new one with the title if it doesn't exist yet.
+     *
+     * @param id The id
+     * @param title The title
+     * @param jsonTitle Whether the title is in json format
+     * @return The merchant
+     */
+    Merchant getOrCreate(String id, String title, boolean jsonTitle);
+
+    /**
+     * Gets the merchant with the unique id, or creates and registers
+     * a new one with the title if it doesn't exist yet.
+     *
+     * @param uniqueId The unique id
+     * @param title The title
+     * @param jsonTitle Whether the title is in json format
+     * @return The merchant
+     */
+    Merchant getOrCreate(UUID uniqueId, String title, boolean jsonTitle);
+
+    /**
+     * Gets the merchant with the stable id.
+     *
+     * @param id The id
+     * @return The merchant, if registered
+     */
+    Optional<Merchant> get(String id);
+
+    /**
+     * Gets the merchant with the unique id.
+     *
+     * @param uniqueId The unique id
+     * @return The merchant, if registered
+     */
+    Optional<Merchant> get(UUID uniqueId);
+
+    /**
+     * Registers the merchant.
+     *
+     * @param merchant The merchant
+     * @return {@code false} if a merchant with the same unique id was registered
+     */
+    boolean register(Merchant merchant);
+
+    /**
+     * Unregisters the merchant.
+     *
+     * @param merchant The merchant
+     * @return {@code true} if the merchant was registered
+     */
+    boolean unregister(Merchant merchant);
+
+    /**
+     * Gets whether a merchant with the unique id is registered.
+     *
+     * @param uniqueId The unique id
+     * @return Whether the merchant is registered
+     */
+    boolean contains(UUID uniqueId);
+
+    /**
+     * Gets the amount of registered merchants.
+     *
+     * @return The amount of merchants
+     */
+    int size();
+
+    /**
+     * Gets a unmodifiable view of the registered merchants, iterating
+     * it doesn't copy the merchants and doesn't fail if the registry
+     * is modified at the same time.
+     *
+     * @return The merchants
+     */
+    Collection<Merchant> getMerchants();
+
+    /**
+     * Estimates the amount of heap memory in bytes that is used
+     * by the registered merchants and their offers.
+     *
+     * @return The memory estimate
+     */
+    long estimateMemoryUsage();
+
+    /**
+     * Writes all the registered merchants with the {@link MerchantPersistence},
+     * this should be called on the main thread.
+     *
+     * @param out The output stream
+     * @param compress Whether the data should be compressed
+     * @return The future that completes once everything is written
+     */
+    ListenableFuture<Void> save(OutputStream out, boolean compress);
+
+    /**
+     * Reads the merchants with the {@link MerchantPersistence} and registers
+     * them. If a merchant with the same unique id is already registered, the
+     * registered merchant is kept and returned instead.
+     *
+     * @param in The input stream
+     * @return The future of the merchants
+     */
+    ListenableFuture<List<Merchant>> load(InputStream in);
+
+    /**
+     * Adds the {@link Listener} to the registry.
+     *
+     * @param listener The listener
+     * @return {@code true} if not added before
+     */
+    boolean addListener(Listener listener);
+
+    /**
+     * Removes the {@link Listener} from the registry.
+     *
+     * @param listener The listener
+     * @return {@code true} if added before
+     */
+    boolean removeListener(Listener listener);
+
+    /**
+     * Is notified when merchants are registered or unregistered, the
+     * listeners are called on the thread that changed the registry.
+     */
+    interface Listener {
+
+        /**
+         * Called when a merchant is registered.
+         *
+         * @param merchant The merchant
+         */
+        void onRegister(Merchant merchant);
+
+        /**
+         * Called when a merchant is unregistered.
+         *
+         * @param merchant The merchant
+         */
+        void onUnregister(Merchant merchant);
+
+    }
+
+}
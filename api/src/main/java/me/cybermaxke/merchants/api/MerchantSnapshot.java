@@ -0,0 +1,245 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.bukkit.inventory.ItemStack;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A immutable copy of the state of a {@link Merchant}, that can be
+ * stored and restored later with the {@link MerchantPersistence}.
+ */
+public final class MerchantSnapshot {
+
+    /**
+     * Takes a snapshot of the merchant, this should
+     * be called on the main thread.
+     *
+     * @param merchant The merchant
+     * @return The snapshot
+     */
+    public static MerchantSnapshot of(Merchant merchant) {
+        checkNotNull(merchant, "merchant");
+        final ImmutableList.Builder<Offer> offers = ImmutableList.builder();
+        for (MerchantOffer offer : merchant.getOffers()) {
+            offers.add(Offer.of(offer, merchant.getUses(offer)));
+        }
+        return new MerchantSnapshot(merchant.getUniqueId(), merchant.getTitle(), merchant.isTitleJson(), offers.build());
+    }
+
+    private final UUID uniqueId;
+    private final String title;
+    private final boolean jsonTitle;
+    private final List<Offer> offers;
+
+    /**
+     * Creates a new merchant snapshot.
+     *
+     * @param uniqueId The unique id
+     * @param title The title
+     * @param jsonTitle Whether the title is in json format
+     * @param offers The offers
+     */
+    public MerchantSnapshot(UUID uniqueId, String title, boolean jsonTitle, List<Offer> offers) {
+        this.uniqueId = checkNotNull(uniqueId, "uniqueId");
+        this.title = checkNotNull(title, "title");
+        this.jsonTitle = jsonTitle;
+        this.offers = ImmutableList.copyOf(checkNotNull(offers, "offers"));
+    }
+
+    /**
+     * Gets the unique id of the merchant.
+     *
+     * @return The unique id
+     */
+    public UUID getUniqueId() {
+        return this.uniqueId;
+    }
+
+    /**
+     * Gets the title of the merchant.
+     *
+     * @return The title
+     */
+    public String getTitle() {
+        return this.title;
+    }
+
+    /**
+     * Gets whether the title is in json format.
+     *
+     * @return Is title in json format
+     */
+    public boolean isTitleJson() {
+        return this.jsonTitle;
+    }
+
+    /**
+     * Gets the snapshots of the offers, in the order of the merchant.
+     *
+     * @return The offers
+     */
+    public List<Offer> getOffers() {
+        return this.offers;
+    }
+
+    /**
+     * A immutable copy of the state of a {@link MerchantOffer}. The uses of
+     * the customers are not included, only whether the offer has them.
+     */
+    public static final class Offer {
+
+        /**
+         * Takes a snapshot of the offer.
+         *
+         * @param offer The offer
+         * @return The snapshot
+         */
+        public static Offer of(MerchantOffer offer) {
+            checkNotNull(offer, "offer");
+            return of(offer, offer.getUses());
+        }
+
+        /**
+         * Takes a snapshot of the offer with the uses of a merchant.
+         *
+         * @param offer The offer
+         * @param uses The uses of the offer in the merchant
+         * @return The snapshot
+         */
+        public static Offer of(MerchantOffer offer, int uses) {
+            checkNotNull(offer, "offer");
+            // The items of the offer are already copies
+            return new Offer(offer.getResultItem(), offer.getFirstItem(), offer.getSecondItem().orNull(),
+                    uses, offer.getMaxUses(), offer.hasCustomerUses(), false);
+        }
+
+        /**
+         * Gets a snapshot with the same items as this one and the given uses.
+         * The items are shared with this snapshot, they are never modified.
+         *
+         * @param uses The uses
+         * @param maxUses The maximum uses
+         * @param customerUses Whether the customers have their own uses
+         * @return The snapshot
+         */
+        public Offer withUses(int uses, int maxUses, boolean customerUses) {
+            return new Offer(this.result, this.item1, this.item2, uses, maxUses, customerUses, false);
+        }
+
+        private final ItemStack result;
+        private final ItemStack item1;
+        @Nullable private final ItemStack item2;
+
+        private final int uses;
+        private final int maxUses;
+        private final boolean customerUses;
+
+        /**
+         * Creates a new offer snapshot.
+         *
+         * @param result The resulting item stack
+         * @param firstItem The first item stack
+         * @param secondItem The second item stack
+         * @param uses The uses
+         * @param maxUses The maximum uses
+         * @param customerUses Whether the customers have their own uses
+         */
+        public Offer(ItemStack result, ItemStack firstItem, @Nullable ItemStack secondItem, int uses, int maxUses,
+                boolean customerUses) {
+            this(result, firstItem, secondItem, uses, maxUses, customerUses, true);
+        }
+
+        private Offer(ItemStack result, ItemStack firstItem, @Nullable ItemStack secondItem, int uses, int maxUses,
+                boolean customerUses, boolean copy) {
+            checkNotNull(result, "result");
+            checkNotNull(firstItem, "firstItem");
+            this.result = copy ? result.clone() : result;
+            this.item1 = copy ? firstItem.clone() : firstItem;
+            this.item2 = copy && secondItem != null ? secondItem.clone() : secondItem;
+            this.uses = uses;
+            this.maxUses = maxUses;
+            this.customerUses = customerUses;
+        }
+
+        /**
+         * Gets a copy of the first {@link ItemStack}.
+         *
+         * @return The item stack
+         */
+        public ItemStack getFirstItem() {
+            return this.item1.clone();
+        }
+
+        /**
+         * Gets a copy of the second {@link ItemStack}.
+         *
+         * @return The item stack
+         */
+        public Optional<ItemStack> getSecondItem() {
+            return this.item2 == null ? Optional.<ItemStack>absent() : Optional.of(this.item2.clone());
+        }
+
+        /**
+         * Gets a copy of the resulting {@link ItemStack}.
+         *
+         * @return The item stack
+         */
+        public ItemStack getResultItem() {
+            return this.result.clone();
+        }
+
+        /**
+         * Gets the uses of the offer.
+         *
+         * @return The uses
+         */
+        public int getUses() {
+            return this.uses;
+        }
+
+        /**
+         * Gets the maximum uses of the offer.
+         *
+         * @return The maximum uses
+         */
+        public int getMaxUses() {
+            return this.maxUses;
+        }
+
+        /**
+         * Gets whether the customers have their own uses.
+         *
+         * @return Whether the offer has customer uses
+         */
+        public boolean hasCustomerUses() {
+            return this.customerUses;
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+import java.util.List;
+
+/**
+ * A immutable set of offers and a title that can be used to create many
+ * {@link Merchant}s. The merchants share the offers of the template and only
+ * keep the offers they replace and their own uses, so they only take memory
+ * for their changes. The offers only have to be encoded once for all the
+ * merchants without changes. Adding, removing or moving offers gives the
+ * merchant its own offer list.
+ *
+ * <p>
+ * The {@link MerchantOffer}s themselves are shared as well, but every merchant
+ * counts its own uses of them, see {@link Merchant#getUses(MerchantOffer)}.
+ * Changing the uses of an offer of the template affects the merchants that
+ * didn't count their own uses of it yet.
+ * </p>
+ */
+public interface MerchantTemplate {
+
+    /**
+     * Gets the title of the merchants.
+     *
+     * @return The title
+     */
+    String getTitle();
+
+    /**
+     * Gets whether the title is in json format.
+     *
+     * @return Is title in json format
+     */
+    boolean isTitleJson();
+
+    /**
+     * Gets all the {@link MerchantOffer}s of the template.
+     *
+     * @return The offers
+     */
+    List<MerchantOffer> getOffers();
+
+    /**
+     * Gets the amount of offers in this template.
+     *
+     * @return The count
+     */
+    int getOffersCount();
+
+    /**
+     * Creates a new {@link Merchant} with the title and offers of the template.
+     *
+     * @return The merchant
+     */
+    Merchant newMerchant();
+
+    /**
+     * Creates a new {@link Merchant} with the offers of the template.
+     *
+     * @param title The title
+     * @param jsonTitle Whether the title is in json format
+     * @return The merchant
+     */
+    Merchant newMerchant(String title, boolean jsonTitle);
+
+}
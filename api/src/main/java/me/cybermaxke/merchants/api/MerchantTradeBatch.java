@@ -0,0 +1,62 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+import org.bukkit.entity.Player;
+
+/**
+ * The trades that happened during one tick, in the order that they
+ * happened. A batch is reused every tick, so it is only valid during
+ * the call to the {@link MerchantTradeBatchListener} and may not be
+ * stored.
+ */
+public interface MerchantTradeBatch {
+
+    /**
+     * Gets the amount of trades in the batch.
+     *
+     * @return The amount of trades
+     */
+    int size();
+
+    /**
+     * Gets the {@link Merchant} of the trade at the index.
+     *
+     * @param index The index
+     * @return The merchant
+     */
+    Merchant getMerchant(int index);
+
+    /**
+     * Gets the {@link MerchantOffer} of the trade at the index.
+     *
+     * @param index The index
+     * @return The offer
+     */
+    MerchantOffer getOffer(int index);
+
+    /**
+     * Gets the customer of the trade at the index.
+     *
+     * @param index The index
+     * @return The customer
+     */
+    Player getCustomer(int index);
+
+}
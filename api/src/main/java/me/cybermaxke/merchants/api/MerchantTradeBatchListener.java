@@ -0,0 +1,36 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+/**
+ * A trade listener that receives all the trades of a tick at once, at the
+ * end of the tick. This can be added to a {@link Merchant} to receive its
+ * trades, or to the {@link MerchantAPI} to receive the trades of every
+ * merchant.
+ */
+public interface MerchantTradeBatchListener {
+
+    /**
+     * Called at the end of a tick in which customers traded items.
+     *
+     * @param batch The trades
+     */
+    void onTrades(MerchantTradeBatch batch);
+
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.UUID;
+
+/**
+ * A immutable snapshot of a trade, created on the main thread when a
+ * customer trades with a {@link Merchant} and passed to the
+ * {@link AsyncMerchantTradeListener}s on a worker thread.
+ */
+public final class MerchantTradeEvent {
+
+    private final Merchant merchant;
+    private final MerchantSnapshot.Offer offer;
+    private final UUID customerId;
+    private final long timestamp;
+
+    /**
+     * Creates a new trade event.
+     *
+     * @param merchant The merchant
+     * @param offer The snapshot of the offer
+     * @param customerId The unique id of the customer
+     * @param timestamp The time of the trade in milliseconds
+     */
+    public MerchantTradeEvent(Merchant merchant, MerchantSnapshot.Offer offer, UUID customerId, long timestamp) {
+        this.merchant = checkNotNull(merchant, "merchant");
+        this.offer = checkNotNull(offer, "offer");
+        this.customerId = checkNotNull(customerId, "customerId");
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Gets the {@link Merchant} that was traded with. The merchant isn't
+     * thread safe, it should only be modified on the main thread.
+     *
+     * @return The merchant
+     */
+    public Merchant getMerchant() {
+        return this.merchant;
+    }
+
+    /**
+     * Gets a snapshot of the {@link MerchantOffer} that was traded, taken
+     * directly after the trade. The uses are the ones of the customer if
+     * the offer has customer uses, otherwise the ones of the merchant.
+     *
+     * @return The offer
+     */
+    public MerchantSnapshot.Offer getOffer() {
+        return this.offer;
+    }
+
+    /**
+     * Gets the unique id of the customer that traded.
+     *
+     * @return The unique id
+     */
+    public UUID getCustomerId() {
+        return this.customerId;
+    }
+
+    /**
+     * Gets the time of the trade, in milliseconds since the epoch.
+     *
+     * @return The timestamp
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+}
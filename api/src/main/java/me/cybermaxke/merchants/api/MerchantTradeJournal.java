@@ -0,0 +1,110 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * A durable, append only record of every trade that happened with
+ * a {@link Merchant}. The records are stored in the order of the trades.
+ */
+public interface MerchantTradeJournal {
+
+    /**
+     * Opens a new {@link Reader} that streams all the records in the
+     * journal, from the oldest to the newest. The records that are
+     * appended while reading may be missed.
+     *
+     * @return The reader
+     * @throws IOException If the journal couldn't be read
+     */
+    Reader newReader() throws IOException;
+
+    /**
+     * Streams the records of a journal. The reader is moved to the next
+     * record with {@link #next()}, the getters return the values of the
+     * current record.
+     */
+    interface Reader extends Closeable {
+
+        /**
+         * Moves the reader to the next record.
+         *
+         * @return {@code false} if there are no records left
+         * @throws IOException If the journal couldn't be read
+         */
+        boolean next() throws IOException;
+
+        /**
+         * Gets the sequence number of the record, every
+         * record has a number higher then the one before.
+         *
+         * @return The sequence number
+         */
+        long getSequence();
+
+        /**
+         * Gets the time of the trade, in milliseconds since the epoch.
+         *
+         * @return The timestamp
+         */
+        long getTimestamp();
+
+        /**
+         * Gets the value of {@link System#nanoTime()} at the time of the trade,
+         * only useful to compare records that are written by the same server run.
+         *
+         * @return The nano time
+         */
+        long getNanoTime();
+
+        /**
+         * Gets the unique id of the {@link Merchant}.
+         *
+         * @return The unique id
+         */
+        UUID getMerchantId();
+
+        /**
+         * Gets the index of the {@link MerchantOffer} in the merchant at the time
+         * of the trade, or {@code -1} if the offer was removed before the trade.
+         *
+         * @return The offer index
+         */
+        int getOfferIndex();
+
+        /**
+         * Gets the unique id of the customer.
+         *
+         * @return The unique id
+         */
+        UUID getCustomerId();
+
+        /**
+         * Gets the amount of items that the customer received.
+         *
+         * @return The amount
+         */
+        int getAmount();
+
+    }
+
+}
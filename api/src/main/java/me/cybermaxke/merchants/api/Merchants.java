@@ -18,10 +18,15 @@
  */
 package me.cybermaxke.merchants.api;
 
+import java.util.List;
+import java.util.UUID;
+
 import javax.annotation.Nullable;
 
 import org.bukkit.inventory.ItemStack;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public class Merchants {
 
     private static MerchantAPI instance;
@@ -57,6 +62,41 @@ public class Merchants {
         return getOrThrowError().newMerchant(title, jsonTitle);
     }
 
+    /**
+     * Creates a new {@link Merchant} with the specified unique id and title.
+     *
+     * @param uniqueId The unique id
+     * @param title The title
+     * @param jsonTitle Whether the title is in json format
+     * @return The merchant
+     */
+    public static Merchant newMerchant(UUID uniqueId, String title, boolean jsonTitle) {
+        return getOrThrowError().newMerchant(uniqueId, title, jsonTitle);
+    }
+
+    /**
+     * Creates a new {@link MerchantTemplate} with the specified title and offers.
+     *
+     * @param title The title
+     * @param offers The offers
+     * @return The template
+     */
+    public static MerchantTemplate newTemplate(String title, Iterable<MerchantOffer> offers) {
+        return getOrThrowError().newTemplate(title, offers);
+    }
+
+    /**
+     * Creates a new {@link MerchantTemplate} with the specified title and offers.
+     *
+     * @param title The title
+     * @param jsonTitle Whether the title is in json format
+     * @param offers The offers
+     * @return The template
+     */
+    public static MerchantTemplate newTemplate(String title, boolean jsonTitle, Iterable<MerchantOffer> offers) {
+        return getOrThrowError().newTemplate(title, jsonTitle, offers);
+    }
+
     /**
      * Creates a new {@link MerchantOffer} with the trade items.
      *
@@ -81,6 +121,16 @@ public class Merchants {
         return getOrThrowError().newOffer(result, firstItem);
     }
 
+    /**
+     * Creates new {@link MerchantOffer}s from the offer snapshots on a worker thread.
+     *
+     * @param offers The offer snapshots
+     * @return The future of the offers
+     */
+    public static ListenableFuture<List<MerchantOffer>> newOffersAsync(Iterable<MerchantSnapshot.Offer> offers) {
+        return getOrThrowError().newOffersAsync(offers);
+    }
+
     /**
      * Gets the instance of the merchants api.
      *
@@ -0,0 +1,152 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * Measures the cost of copying the uses of a 50 offer list into the fields
+ * of the recipes, which v17r4 does for every update of a merchant. The
+ * previous access made the fields accessible and boxed the uses for every
+ * offer, the accessors resolve the fields once and write the ints directly.
+ *
+ * <p>Run with {@code gradle :merchants-common:benchmark}.</p>
+ */
+public final class FieldAccessBenchmark {
+
+    private static final int OFFERS = 50;
+    private static final int UPDATES = 100000;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 20;
+
+    // Stands in for the nms recipe, the fields are private like in 1.7
+    @SuppressWarnings("unused")
+    static final class Recipe {
+
+        private int uses;
+        private int maxUses;
+    }
+
+    // Copies the uses into the fields of the recipe
+    interface UsesWriter {
+
+        void write(Recipe recipe, int uses, int maxUses) throws IllegalAccessException;
+    }
+
+    // The access before the accessors were resolved on enable
+    private static final class PerCallWriter implements UsesWriter {
+
+        private final Field fieldUses;
+        private final Field fieldMaxUses;
+
+        private PerCallWriter(Field fieldUses, Field fieldMaxUses) {
+            this.fieldUses = fieldUses;
+            this.fieldMaxUses = fieldMaxUses;
+        }
+
+        @Override
+        public void write(Recipe recipe, int uses, int maxUses) throws IllegalAccessException {
+            this.fieldUses.setAccessible(true);
+            this.fieldUses.set(recipe, uses);
+            this.fieldMaxUses.setAccessible(true);
+            this.fieldMaxUses.set(recipe, maxUses);
+        }
+    }
+
+    // The access through the accessors that are resolved on enable
+    private static final class CachedWriter implements UsesWriter {
+
+        private final Field fieldUses;
+        private final Field fieldMaxUses;
+
+        private CachedWriter(Field fieldUses, Field fieldMaxUses) {
+            fieldUses.setAccessible(true);
+            fieldMaxUses.setAccessible(true);
+            this.fieldUses = fieldUses;
+            this.fieldMaxUses = fieldMaxUses;
+        }
+
+        @Override
+        public void write(Recipe recipe, int uses, int maxUses) throws IllegalAccessException {
+            this.fieldUses.setInt(recipe, uses);
+            this.fieldMaxUses.setInt(recipe, maxUses);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Recipe[] recipes = new Recipe[OFFERS];
+        for (int i = 0; i < recipes.length; i++) {
+            recipes[i] = new Recipe();
+        }
+
+        final Field fieldUses = Recipe.class.getDeclaredField("uses");
+        final Field fieldMaxUses = Recipe.class.getDeclaredField("maxUses");
+
+        // The uses above the integer cache, every update boxes them
+        final int uses = 1000;
+
+        final UsesWriter perCall = new PerCallWriter(fieldUses, fieldMaxUses);
+        final UsesWriter cached = new CachedWriter(fieldUses, fieldMaxUses);
+
+        // Both are warmed up first, so that neither runs before the other is compiled
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(perCall, recipes, uses);
+            run(cached, recipes, uses);
+        }
+
+        report("per call access", perCall, recipes, uses);
+        report("cached accessors", cached, recipes, uses);
+    }
+
+    private static void report(String name, UsesWriter writer, Recipe[] recipes, int uses) throws IllegalAccessException {
+        final double[] results = new double[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            results[i] = run(writer, recipes, uses);
+        }
+        Arrays.sort(results);
+        System.out.println(String.format("%-16s %d offers: min %.1f ns, median %.1f ns per update",
+                name, OFFERS, results[0], results[ROUNDS / 2]));
+    }
+
+    // Runs the updates and returns the nanoseconds per update
+    private static double run(UsesWriter writer, Recipe[] recipes, int uses) throws IllegalAccessException {
+        final long start = System.nanoTime();
+        for (int i = 0; i < UPDATES; i++) {
+            for (Recipe recipe : recipes) {
+                writer.write(recipe, uses + i, Integer.MAX_VALUE);
+            }
+        }
+        final double result = (double) (System.nanoTime() - start) / UPDATES;
+
+        // Read the fields, so that the writes cannot be removed
+        int sum = 0;
+        for (Recipe recipe : recipes) {
+            sum += recipe.uses;
+        }
+        if (sum == 0) {
+            throw new IllegalStateException();
+        }
+        return result;
+    }
+
+    private FieldAccessBenchmark() {
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantEditor;
+import me.cybermaxke.merchants.api.MerchantOffer;
+
+/**
+ * A {@link MerchantEditor} that replays the changes on a copy of the
+ * offers of the merchant, so that the merchant only has to replace its
+ * offers once, and only when all the changes succeeded.
+ */
+public abstract class AbstractMerchantEditor implements MerchantEditor {
+
+    // A single change to the offers
+    private interface Change {
+
+        void apply(Offers offers);
+    }
+
+    // The offers that the changes are applied to
+    private static final class Offers {
+
+        private final List<MerchantOffer> list;
+
+        // The offers in the list, to check the membership
+        // without scanning the list
+        private final Multiset<MerchantOffer> members;
+
+        Offers(List<MerchantOffer> list) {
+            this.list = list;
+            this.members = HashMultiset.create(list);
+        }
+
+        void add(int index, MerchantOffer offer) {
+            this.list.add(index, offer);
+            this.members.add(offer);
+        }
+
+        void set(int index, MerchantOffer offer) {
+            this.members.remove(this.list.set(index, offer));
+            this.members.add(offer);
+        }
+
+        void removeIf(Predicate<? super MerchantOffer> predicate) {
+            // Move the remaining offers forward in a single pass
+            final int size = this.list.size();
+            int remaining = 0;
+            for (int i = 0; i < size; i++) {
+                final MerchantOffer offer = this.list.get(i);
+                if (predicate.apply(offer)) {
+                    this.members.remove(offer);
+                } else {
+                    this.list.set(remaining++, offer);
+                }
+            }
+            this.list.subList(remaining, size).clear();
+        }
+    }
+
+    private final Merchant merchant;
+    private final List<Change> changes = Lists.newArrayList();
+
+    // The title that should be applied
+    private String title;
+    private boolean jsonTitle;
+
+    protected AbstractMerchantEditor(Merchant merchant) {
+        this.merchant = checkNotNull(merchant, "merchant");
+    }
+
+    /**
+     * Replaces all the offers of the merchant with the offers
+     * that resulted from the changes, as a single update.
+     *
+     * @param offers The new offers
+     */
+    protected abstract void setOffers(List<MerchantOffer> offers);
+
+    @Override
+    public MerchantEditor setTitle(String title, boolean jsonTitle) {
+        this.title = checkNotNull(title, "title");
+        this.jsonTitle = jsonTitle;
+        return this;
+    }
+
+    @Override
+    public MerchantEditor setTitle(String title) {
+        return this.setTitle(title, false);
+    }
+
+    @Override
+    public MerchantEditor addOffer(final MerchantOffer offer) {
+        checkNotNull(offer, "offer");
+        this.changes.add(new Change() {
+
+            @Override
+            public void apply(Offers offers) {
+                if (!offers.members.contains(offer)) {
+                    offers.add(offers.list.size(), offer);
+                }
+            }
+
+        });
+        return this;
+    }
+
+    @Override
+    public MerchantEditor addOffers(Iterable<MerchantOffer> offers) {
+        checkNotNull(offers, "offers");
+        for (MerchantOffer offer : offers) {
+            this.addOffer(offer);
+        }
+        return this;
+    }
+
+    @Override
+    public MerchantEditor insertOfferAt(final int index, final MerchantOffer offer) {
+        checkNotNull(offer, "offer");
+        this.changes.add(new Change() {
+
+            @Override
+            public void apply(Offers offers) {
+                checkPositionIndex(index, offers.list.size());
+                offers.add(index, offer);
+            }
+
+        });
+        return this;
+    }
+
+    @Override
+    public MerchantEditor setOfferAt(final int index, final MerchantOffer offer) {
+        checkNotNull(offer, "offer");
+        this.changes.add(new Change() {
+
+            @Override
+            public void apply(Offers offers) {
+                checkElementIndex(index, offers.list.size());
+                offers.set(index, offer);
+            }
+
+        });
+        return this;
+    }
+
+    @Override
+    public MerchantEditor removeOffer(final MerchantOffer offer) {
+        checkNotNull(offer, "offer");
+        this.changes.add(new Change() {
+
+            @Override
+            public void apply(Offers offers) {
+                if (offers.members.remove(offer)) {
+                    offers.list.remove(offer);
+                }
+            }
+
+        });
+        return this;
+    }
+
+    @Override
+    public MerchantEditor removeOffers(Iterable<MerchantOffer> offers) {
+        checkNotNull(offers, "offers");
+
+        final Set<MerchantOffer> removed = Sets.newIdentityHashSet();
+        for (MerchantOffer offer : offers) {
+            removed.add(checkNotNull(offer, "offer"));
+        }
+        return this.removeOffersIf(Predicates.in(removed));
+    }
+
+    @Override
+    public MerchantEditor removeOffersIf(final Predicate<MerchantOffer> predicate) {
+        checkNotNull(predicate, "predicate");
+        this.changes.add(new Change() {
+
+            @Override
+            public void apply(Offers offers) {
+                offers.removeIf(predicate);
+            }
+
+        });
+        return this;
+    }
+
+    @Override
+    public MerchantEditor clearOffers() {
+        return this.removeOffersIf(Predicates.<MerchantOffer>alwaysTrue());
+    }
+
+    @Override
+    public MerchantEditor sortOffers(final Comparator<MerchantOffer> comparator) {
+        checkNotNull(comparator, "comparator");
+        this.changes.add(new Change() {
+
+            @Override
+            public void apply(Offers offers) {
+                Collections.sort(offers.list, comparator);
+            }
+
+        });
+        return this;
+    }
+
+    @Override
+    public void apply() {
+        List<MerchantOffer> result = null;
+
+        // Replay the changes before touching the merchant,
+        // the copy is just thrown away if one of them fails
+        if (!this.changes.isEmpty()) {
+            final Offers offers = new Offers(Lists.newArrayList(this.merchant.getOffers()));
+            for (Change change : this.changes) {
+                change.apply(offers);
+            }
+            result = offers.list;
+        }
+
+        // The title can still fail to parse, so set it
+        // before the offers are replaced
+        if (this.title != null) {
+            this.merchant.setTitle(this.title, this.jsonTitle);
+        }
+        if (result != null) {
+            this.setOffers(result);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantPersistence;
+import me.cybermaxke.merchants.api.MerchantSnapshot;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Callables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * The base of the merchant persistence of every version. The records are
+ * read on a worker thread and every record is decoded by a separate task,
+ * so the items of many merchants are decoded in parallel. The decoded
+ * snapshots are restored on the main thread at once.
+ */
+public abstract class AbstractMerchantPersistence implements MerchantPersistence {
+
+    private final ItemCodec codec;
+    private final ListeningExecutorService workers;
+    private final Executor mainThread;
+
+    /**
+     * Creates a new merchant persistence.
+     *
+     * @param codec The codec of the items
+     * @param workers The executor of the encoding and decoding
+     * @param mainThread The executor of the main thread
+     */
+    protected AbstractMerchantPersistence(ItemCodec codec, ListeningExecutorService workers, Executor mainThread) {
+        this.codec = checkNotNull(codec, "codec");
+        this.workers = checkNotNull(workers, "workers");
+        this.mainThread = checkNotNull(mainThread, "mainThread");
+    }
+
+    @Override
+    public ListenableFuture<Void> save(OutputStream out, Iterable<? extends Merchant> merchants, boolean compress) {
+        checkNotNull(out, "out");
+        checkNotNull(merchants, "merchants");
+        // Take the snapshots now, the merchants may only be accessed on the main thread
+        final List<Callable<MerchantSnapshot>> snapshots = Lists.newArrayList();
+        for (Merchant merchant : merchants) {
+            if (merchant instanceof EvictableMerchant) {
+                // Decode the evicted offers on the worker, instead of restoring the merchant
+                final byte[] record = ((EvictableMerchant) merchant).getEvictedRecord();
+                if (record != null) {
+                    snapshots.add(new EvictedSnapshot(record, merchant.getTitle(), merchant.isTitleJson()));
+                    continue;
+                }
+            }
+            snapshots.add(Callables.returning(MerchantSnapshot.of(merchant)));
+        }
+        return this.write(out, snapshots, compress);
+    }
+
+    @Override
+    public ListenableFuture<Void> saveSnapshots(OutputStream out, Iterable<MerchantSnapshot> snapshots, boolean compress) {
+        checkNotNull(out, "out");
+        checkNotNull(snapshots, "snapshots");
+        final List<Callable<MerchantSnapshot>> snapshots0 = Lists.newArrayList();
+        for (MerchantSnapshot snapshot : snapshots) {
+            snapshots0.add(Callables.returning(snapshot));
+        }
+        return this.write(out, snapshots0, compress);
+    }
+
+    private ListenableFuture<Void> write(final OutputStream out, final List<Callable<MerchantSnapshot>> snapshots,
+            final boolean compress) {
+        return this.workers.submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                final MerchantSnapshotWriter writer;
+                try {
+                    writer = new MerchantSnapshotWriter(out, codec, compress);
+                } catch (IOException e) {
+                    closeQuietly(out);
+                    throw e;
+                }
+                try {
+                    for (Callable<MerchantSnapshot> snapshot : snapshots) {
+                        writer.write(snapshot.call());
+                    }
+                } finally {
+                    writer.close();
+                }
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public ListenableFuture<List<MerchantSnapshot>> loadSnapshots(final InputStream in) {
+        checkNotNull(in, "in");
+        return Futures.dereference(this.workers.submit(new Callable<ListenableFuture<List<MerchantSnapshot>>>() {
+
+            @Override
+            public ListenableFuture<List<MerchantSnapshot>> call() throws Exception {
+                final List<ListenableFuture<MerchantSnapshot>> snapshots = Lists.newArrayList();
+                final MerchantSnapshotReader reader;
+                try {
+                    reader = new MerchantSnapshotReader(in, codec);
+                } catch (IOException e) {
+                    closeQuietly(in);
+                    throw e;
+                }
+                try {
+                    // Reading the records is cheap, decode them in parallel
+                    byte[] record;
+                    while ((record = reader.readRecord()) != null) {
+                        snapshots.add(decode(record));
+                    }
+                } catch (IOException e) {
+                    // Don't decode the records that were read before the error
+                    for (ListenableFuture<MerchantSnapshot> snapshot : snapshots) {
+                        snapshot.cancel(false);
+                    }
+                    throw e;
+                } finally {
+                    reader.close();
+                }
+                return Futures.allAsList(snapshots);
+            }
+
+        }));
+    }
+
+    private ListenableFuture<MerchantSnapshot> decode(final byte[] record) {
+        return this.workers.submit(new Callable<MerchantSnapshot>() {
+
+            @Override
+            public MerchantSnapshot call() throws Exception {
+                return MerchantSnapshotReader.decode(record, codec);
+            }
+
+        });
+    }
+
+    @Override
+    public ListenableFuture<List<Merchant>> load(InputStream in) {
+        return Futures.transform(this.loadSnapshots(in), new Function<List<MerchantSnapshot>, List<Merchant>>() {
+
+            @Override
+            public List<Merchant> apply(List<MerchantSnapshot> snapshots) {
+                // Publish all the merchants in one main thread task
+                final List<Merchant> merchants = Lists.newArrayListWithCapacity(snapshots.size());
+                for (MerchantSnapshot snapshot : snapshots) {
+                    merchants.add(restore(snapshot));
+                }
+                return merchants;
+            }
+
+        }, this.mainThread);
+    }
+
+    // The snapshot of a evicted merchant, with the current title
+    private final class EvictedSnapshot implements Callable<MerchantSnapshot> {
+
+        private final byte[] record;
+        private final String title;
+        private final boolean jsonTitle;
+
+        private EvictedSnapshot(byte[] record, String title, boolean jsonTitle) {
+            this.record = record;
+            this.title = title;
+            this.jsonTitle = jsonTitle;
+        }
+
+        @Override
+        public MerchantSnapshot call() throws Exception {
+            final MerchantSnapshot snapshot = MerchantSnapshotReader.decode(this.record, codec);
+            return new MerchantSnapshot(snapshot.getUniqueId(), this.title, this.jsonTitle, snapshot.getOffers());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantAPI;
+import me.cybermaxke.merchants.api.MerchantRegistry;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * A merchant registry that is backed by a concurrent map.
+ */
+public class ConcurrentMerchantRegistry implements MerchantRegistry {
+
+    // The estimated sizes of a merchant and a offer, with their
+    // collections, item stacks and the encoded offer list
+    private static final long MERCHANT_SIZE = 1024;
+    private static final long OFFER_SIZE = 768;
+
+    private final MerchantAPI api;
+
+    private final ConcurrentMap<UUID, Merchant> merchants = Maps.newConcurrentMap();
+    private final Collection<Merchant> merchantsView = Collections.unmodifiableCollection(this.merchants.values());
+
+    private final Collection<Listener> listeners = new CopyOnWriteArraySet<Listener>();
+
+    /**
+     * Creates a new merchant registry.
+     *
+     * @param api The api that creates the merchants
+     */
+    public ConcurrentMerchantRegistry(MerchantAPI api) {
+        this.api = checkNotNull(api, "api");
+    }
+
+    @Override
+    public UUID getUniqueId(String id) {
+        checkNotNull(id, "id");
+        return UUID.nameUUIDFromBytes(("Merchant:" + id).getBytes(Charsets.UTF_8));
+    }
+
+    @Override
+    public Merchant getOrCreate(String id, String title, boolean jsonTitle) {
+        return this.getOrCreate(this.getUniqueId(id), title, jsonTitle);
+    }
+
+    @Override
+    public Merchant getOrCreate(UUID uniqueId, String title, boolean jsonTitle) {
+        checkNotNull(uniqueId, "uniqueId");
+        checkNotNull(title, "title");
+        Merchant merchant = this.merchants.get(uniqueId);
+        if (merchant != null) {
+            return merchant;
+        }
+        merchant = this.api.newMerchant(uniqueId, title, jsonTitle);
+        final Merchant previous = this.merchants.putIfAbsent(uniqueId, merchant);
+        if (previous != null) {
+            // Created by a other thread in the meantime
+            return previous;
+        }
+        for (Listener listener : this.listeners) {
+            listener.onRegister(merchant);
+        }
+        return merchant;
+    }
+
+    @Override
+    public Optional<Merchant> get(String id) {
+        return this.get(this.getUniqueId(id));
+    }
+
+    @Override
+    public Optional<Merchant> get(UUID uniqueId) {
+        checkNotNull(uniqueId, "uniqueId");
+        return Optional.fromNullable(this.merchants.get(uniqueId));
+    }
+
+    @Override
+    public boolean register(Merchant merchant) {
+        checkNotNull(merchant, "merchant");
+        if (this.merchants.putIfAbsent(merchant.getUniqueId(), merchant) != null) {
+            return false;
+        }
+        for (Listener listener : this.listeners) {
+            listener.onRegister(merchant);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean unregister(Merchant merchant) {
+        checkNotNull(merchant, "merchant");
+        if (!this.merchants.remove(merchant.getUniqueId(), merchant)) {
+            return false;
+        }
+        for (Listener listener : this.listeners) {
+            listener.onUnregister(merchant);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(UUID uniqueId) {
+        checkNotNull(uniqueId, "uniqueId");
+        return this.merchants.containsKey(uniqueId);
+    }
+
+    @Override
+    public int size() {
+        return this.merchants.size();
+    }
+
+    @Override
+    public Collection<Merchant> getMerchants() {
+        return this.merchantsView;
+    }
+
+    @Override
+    public Iterator<Merchant> iterator() {
+        return this.merchantsView.iterator();
+    }
+
+    @Override
+    public long estimateMemoryUsage() {
+        long size = 0;
+        for (Merchant merchant : this.merchants.values()) {
+            // Don't restore evicted merchants to count their offers
+            if (merchant instanceof EvictableMerchant) {
+                final byte[] record = ((EvictableMerchant) merchant).getEvictedRecord();
+                if (record != null) {
+                    size += MERCHANT_SIZE + record.length;
+                    continue;
+                }
+            }
+            size += MERCHANT_SIZE + merchant.getOffersCount() * OFFER_SIZE;
+        }
+        return size;
+    }
+
+    @Override
+    public ListenableFuture<Void> save(OutputStream out, boolean compress) {
+        return this.api.getPersistence().save(out, this.merchants.values(), compress);
+    }
+
+    @Override
+    public ListenableFuture<List<Merchant>> load(InputStream in) {
+        // The merchants are loaded on the main thread, register them there as well
+        return Futures.transform(this.api.getPersistence().load(in), new Function<List<Merchant>, List<Merchant>>() {
+
+            @Override
+            public List<Merchant> apply(List<Merchant> loaded) {
+                final List<Merchant> result = Lists.newArrayListWithCapacity(loaded.size());
+                for (Merchant merchant : loaded) {
+                    if (!register(merchant)) {
+                        // Keep the merchant that was already registered
+                        final Merchant registered = merchants.get(merchant.getUniqueId());
+                        if (registered != null) {
+                            merchant = registered;
+                        }
+                    }
+                    result.add(merchant);
+                }
+                return result;
+            }
+
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    @Override
+    public boolean addListener(Listener listener) {
+        checkNotNull(listener, "listener");
+        return this.listeners.add(listener);
+    }
+
+    @Override
+    public boolean removeListener(Listener listener) {
+        checkNotNull(listener, "listener");
+        return this.listeners.remove(listener);
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import javax.annotation.Nullable;
+
+/**
+ * A merchant that can release the memory of its offers while it isn't
+ * used, the offers are restored the next time that they are accessed.
+ */
+public interface EvictableMerchant {
+
+    /**
+     * Evicts the offers of the merchant if it has no customers and
+     * wasn't used since the time, merchants that share their offers
+     * are never evicted.
+     *
+     * @param idleSince The time in milliseconds since the epoch
+     * @return Whether the merchant was evicted
+     */
+    boolean evict(long idleSince);
+
+    /**
+     * Gets whether the offers of the merchant are evicted.
+     *
+     * @return Is evicted
+     */
+    boolean isEvicted();
+
+    /**
+     * Gets the snapshot record of the evicted merchant, as encoded by
+     * {@link MerchantSnapshotWriter#encode}. The title of the record may
+     * be outdated, the record may not be modified.
+     *
+     * @return The record, or {@code null} if not evicted
+     */
+    @Nullable
+    byte[] getEvictedRecord();
+
+}
@@ -0,0 +1,38 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import javax.annotation.Nullable;
+
+/**
+ * A merchant that measures how long it takes to open its window for
+ * a customer, on the main thread.
+ */
+public interface InstrumentedMerchant {
+
+    /**
+     * Gets the latencies of the opened windows, the histogram
+     * is created when the window is opened the first time.
+     *
+     * @return The latencies, or {@code null} if never opened
+     */
+    @Nullable
+    MerchantLatencyHistogram getOpenLatency();
+
+}
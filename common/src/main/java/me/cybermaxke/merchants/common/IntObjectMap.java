@@ -0,0 +1,220 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A map from ints to objects that keeps the entries packed at the start of
+ * two arrays, so that iterating over the values is a walk over an array. The
+ * positions of the entries are found through a table with open addressing and
+ * linear probing, like {@link UniqueIdIntMap}. Removing an entry moves the last
+ * entry into its place, so the order of the entries changes. This map is not
+ * thread safe.
+ *
+ * @param <V> The type of the values
+ */
+public class IntObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    // The packed keys and values
+    private int[] keys;
+    private Object[] values;
+
+    // The positions of the entries plus one, 0 marks a free slot
+    private int[] slots;
+
+    private int size;
+
+    public IntObjectMap() {
+        this.keys = new int[MIN_CAPACITY];
+        this.values = new Object[MIN_CAPACITY];
+        this.slots = new int[MIN_CAPACITY * 2];
+    }
+
+    /**
+     * Gets the amount of entries in the map.
+     *
+     * @return The size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets whether the map has no entries.
+     *
+     * @return Is empty
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Gets the value at the position, between 0 and the size of the map.
+     *
+     * @param index The position
+     * @return The value
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        checkElementIndex(index, this.size);
+        return (V) this.values[index];
+    }
+
+    /**
+     * Gets the value of the key.
+     *
+     * @param key The key
+     * @return The value, or {@code null} if not present
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        final int slot = this.slotOf(key);
+        return slot < 0 ? null : (V) this.values[this.slots[slot] - 1];
+    }
+
+    /**
+     * Puts the value of the key.
+     *
+     * @param key The key
+     * @param value The value
+     * @return The previous value, or {@code null} if not present
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        checkNotNull(value, "value");
+
+        int slot = this.slotOf(key);
+        if (slot >= 0) {
+            final int index = this.slots[slot] - 1;
+            final V previous = (V) this.values[index];
+            this.values[index] = value;
+            return previous;
+        }
+
+        if (this.size == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, this.size * 2);
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+            this.rehash(this.slots.length * 2);
+        }
+
+        final int index = this.size++;
+        this.keys[index] = key;
+        this.values[index] = value;
+
+        slot = this.home(key);
+        while (this.slots[slot] != 0) {
+            slot = (slot + 1) & (this.slots.length - 1);
+        }
+        this.slots[slot] = index + 1;
+        return null;
+    }
+
+    /**
+     * Removes the key.
+     *
+     * @param key The key
+     * @return The removed value, or {@code null} if not present
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = this.slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        final int index = this.slots[slot] - 1;
+        final V removed = (V) this.values[index];
+
+        // Move the following slots back, so that
+        // the probing doesn't stop at the free slot
+        final int mask = this.slots.length - 1;
+        int next = (slot + 1) & mask;
+        while (this.slots[next] != 0) {
+            final int home = this.home(this.keys[this.slots[next] - 1]);
+            // Only move the slot if the free slot is between its home and its position
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                this.slots[slot] = this.slots[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.slots[slot] = 0;
+
+        // Move the last entry into the gap
+        final int last = --this.size;
+        if (index != last) {
+            this.keys[index] = this.keys[last];
+            this.values[index] = this.values[last];
+            this.slots[this.slotOf(this.keys[index])] = index + 1;
+        }
+        this.values[last] = null;
+        return removed;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        Arrays.fill(this.values, 0, this.size, null);
+        Arrays.fill(this.slots, 0);
+        this.size = 0;
+    }
+
+    private int slotOf(int key) {
+        final int mask = this.slots.length - 1;
+        int slot = this.home(key);
+        while (this.slots[slot] != 0) {
+            if (this.keys[this.slots[slot] - 1] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int home(int key) {
+        int h = key;
+        // Spread the bits, like the hash map does
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h & (this.slots.length - 1);
+    }
+
+    private void rehash(int capacity) {
+        this.slots = new int[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < this.size; i++) {
+            int slot = this.home(this.keys[i]);
+            while (this.slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.slots[slot] = i + 1;
+        }
+    }
+}
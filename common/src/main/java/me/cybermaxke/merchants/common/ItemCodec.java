@@ -0,0 +1,51 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Encodes and decodes {@link ItemStack}s with all their data, the
+ * implementations must be usable from multiple threads at once.
+ */
+public interface ItemCodec {
+
+    /**
+     * Writes the item stack to the output.
+     *
+     * @param out The output
+     * @param itemStack The item stack
+     * @throws IOException If the item stack couldn't be written
+     */
+    void write(DataOutput out, ItemStack itemStack) throws IOException;
+
+    /**
+     * Reads a item stack from the input.
+     *
+     * @param in The input
+     * @return The item stack
+     * @throws IOException If the item stack couldn't be read
+     */
+    ItemStack read(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,486 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import me.cybermaxke.merchants.api.MerchantTradeJournal;
+
+/**
+ * A trade journal that writes fixed size records into memory mapped segment
+ * files. The records are appended on the main thread without allocating
+ * anything, a flusher thread forces the written records to the disk every
+ * flush interval, so one force covers all the trades of that interval.
+ *
+ * <p>Every record is {@value #RECORD_SIZE} bytes, the sequence number is
+ * written last and a record with sequence number {@code 0} marks the end
+ * of a segment. A new segment is prepared by the flusher thread when the
+ * current one is half full, so rolling doesn't block the main thread. The
+ * segment files are allocated and mapped with their full size when they are
+ * created, so up to two segments take disk space and memory before any
+ * record is written to them.</p>
+ */
+public class MappedTradeJournal implements MerchantTradeJournal, Closeable {
+
+    /**
+     * The size of a record in bytes.
+     */
+    public static final int RECORD_SIZE = 64;
+
+    // The offsets of the fields in a record
+    private static final int SEQUENCE = 0;
+    private static final int TIMESTAMP = 8;
+    private static final int NANO_TIME = 16;
+    private static final int MERCHANT_MOST = 24;
+    private static final int MERCHANT_LEAST = 32;
+    private static final int CUSTOMER_MOST = 40;
+    private static final int CUSTOMER_LEAST = 48;
+    private static final int OFFER_INDEX = 56;
+    private static final int AMOUNT = 60;
+
+    private static final String PREFIX = "trades-";
+    private static final String SUFFIX = ".journal";
+
+    private static final FilenameFilter SEGMENT_FILTER = new FilenameFilter() {
+
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+        }
+
+    };
+
+    private final File directory;
+    private final int segmentRecords;
+    private final long flushInterval;
+    private final Logger logger;
+
+    // The lock that is held while a segment is created
+    private final Object segmentLock = new Object();
+
+    // The index of the last segment file
+    private int segmentIndex;
+
+    // The segment that is being written, only accessed by the main thread
+    private Segment current;
+
+    // The segment that is being written, for the flusher thread
+    private volatile Segment active;
+
+    // The segment that will be written after the current one
+    private Segment next;
+
+    // The segments that are full and need to be forced and closed
+    private final Queue<Segment> retired = new ConcurrentLinkedQueue<Segment>();
+
+    // The sequence number of the last record
+    private long sequence;
+
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    /**
+     * Opens the journal in the directory, new records will be
+     * written to a new segment after the existing ones.
+     *
+     * @param directory The directory of the segment files
+     * @param segmentRecords The amount of records per segment file, a segment takes this times {@value #RECORD_SIZE} bytes
+     * @param flushInterval The time between the forces of the written records
+     * @param unit The unit of the flush interval
+     * @param logger The logger of the errors of the flusher
+     * @throws IOException If the journal couldn't be opened
+     */
+    public MappedTradeJournal(File directory, int segmentRecords, long flushInterval, TimeUnit unit,
+            Logger logger) throws IOException {
+        checkNotNull(directory, "directory");
+        checkArgument(segmentRecords > 0, "segmentRecords must be greater then 0");
+        checkArgument(segmentRecords <= Integer.MAX_VALUE / RECORD_SIZE, "segmentRecords is too big");
+        checkArgument(flushInterval > 0, "flushInterval must be greater then 0");
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.flushInterval = unit.toMillis(flushInterval);
+        this.logger = checkNotNull(logger, "logger");
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the journal directory: " + directory);
+        }
+
+        // Continue after the last record of the existing segments
+        final File[] files = listSegments(directory);
+        if (files.length > 0) {
+            this.segmentIndex = getIndex(files[files.length - 1]);
+            for (int i = files.length - 1; i >= 0 && this.sequence == 0; i--) {
+                this.sequence = readLastSequence(files[i]);
+            }
+        }
+
+        this.current = this.createSegment();
+        this.active = this.current;
+
+        this.flusher = new Thread(new Flusher(), "Merchant Trade Journal Flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Appends a trade record to the journal, this may only be called on the
+     * main thread. The records are forced to the disk asynchronously.
+     *
+     * @param merchantId The unique id of the merchant
+     * @param offerIndex The index of the offer
+     * @param customerId The unique id of the customer
+     * @param amount The amount of items that the customer received
+     */
+    public void append(UUID merchantId, int offerIndex, UUID customerId, int amount) {
+        Segment segment = this.current;
+        if (segment == null) {
+            // The journal is closed or broken
+            return;
+        }
+        if (segment.position == this.segmentRecords) {
+            segment = this.roll();
+            if (segment == null) {
+                return;
+            }
+        }
+
+        final MappedByteBuffer buffer = segment.buffer;
+        final int offset = segment.position * RECORD_SIZE;
+
+        buffer.putLong(offset + TIMESTAMP, System.currentTimeMillis());
+        buffer.putLong(offset + NANO_TIME, System.nanoTime());
+        buffer.putLong(offset + MERCHANT_MOST, merchantId.getMostSignificantBits());
+        buffer.putLong(offset + MERCHANT_LEAST, merchantId.getLeastSignificantBits());
+        buffer.putLong(offset + CUSTOMER_MOST, customerId.getMostSignificantBits());
+        buffer.putLong(offset + CUSTOMER_LEAST, customerId.getLeastSignificantBits());
+        buffer.putInt(offset + OFFER_INDEX, offerIndex);
+        buffer.putInt(offset + AMOUNT, amount);
+        // The sequence number completes the record
+        buffer.putLong(offset + SEQUENCE, ++this.sequence);
+
+        segment.position++;
+    }
+
+    // Moves to the next segment, the full one will be closed by the flusher.
+    private Segment roll() {
+        final Segment segment;
+        try {
+            synchronized (this.segmentLock) {
+                if (this.next != null) {
+                    segment = this.next;
+                    this.next = null;
+                } else {
+                    segment = this.createSegment();
+                }
+            }
+        } catch (IOException e) {
+            this.logger.log(Level.SEVERE, "Unable to create a new journal segment, the trades will no longer be recorded", e);
+            this.retired.add(this.current);
+            this.current = null;
+            return null;
+        }
+        this.retired.add(this.current);
+        this.current = segment;
+        this.active = segment;
+        return segment;
+    }
+
+    // Creates the next segment file, the lock must be held.
+    private Segment createSegment() throws IOException {
+        final File file = new File(this.directory, String.format("%s%010d%s", PREFIX, ++this.segmentIndex, SUFFIX));
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final long size = (long) this.segmentRecords * RECORD_SIZE;
+            raf.setLength(size);
+            return new Segment(file, raf, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    // Forces the written records and prepares the next segment.
+    private void flush() {
+        Segment segment;
+        while ((segment = this.retired.poll()) != null) {
+            segment.buffer.force();
+            segment.close();
+        }
+
+        segment = this.active;
+        final int position = segment.position;
+        if (position != segment.forced) {
+            segment.buffer.force();
+            segment.forced = position;
+        }
+
+        if (position >= this.segmentRecords / 2) {
+            synchronized (this.segmentLock) {
+                if (this.next == null && this.running) {
+                    try {
+                        this.next = this.createSegment();
+                    } catch (IOException e) {
+                        this.logger.log(Level.WARNING, "Unable to prepare the next journal segment", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the flusher thread and forces all the written records,
+     * records that are appended afterwards are ignored.
+     */
+    @Override
+    public void close() {
+        checkState(this.running, "journal is already closed");
+        this.running = false;
+        this.flusher.interrupt();
+        try {
+            this.flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.flush();
+        if (this.current != null) {
+            this.current.close();
+            this.current = null;
+        }
+        synchronized (this.segmentLock) {
+            if (this.next != null) {
+                // The prepared segment is never written
+                this.next.close();
+                if (!this.next.file.delete()) {
+                    this.logger.warning("Unable to delete the unused journal segment: " + this.next.file);
+                }
+                this.next = null;
+            }
+        }
+    }
+
+    @Override
+    public Reader newReader() throws IOException {
+        return new SegmentReader(listSegments(this.directory));
+    }
+
+    private static File[] listSegments(File directory) throws IOException {
+        final File[] files = directory.listFiles(SEGMENT_FILTER);
+        if (files == null) {
+            throw new IOException("Unable to list the journal directory: " + directory);
+        }
+        // The indexes have a fixed length, so the names can be sorted
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int getIndex(File file) {
+        final String name = file.getName();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static long readLastSequence(File file) throws IOException {
+        final SegmentReader reader = new SegmentReader(new File[] { file });
+        try {
+            long sequence = 0;
+            while (reader.next()) {
+                sequence = reader.getSequence();
+            }
+            return sequence;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private final class Flusher implements Runnable {
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    Thread.sleep(flushInterval);
+                } catch (InterruptedException e) {
+                    // Closed, the last flush is done on the closing thread
+                    break;
+                }
+                try {
+                    flush();
+                } catch (Throwable t) {
+                    logger.log(Level.SEVERE, "An error occurred while flushing the trade journal", t);
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+
+        // The amount of records that are written
+        private volatile int position;
+
+        // The amount of records that are forced, only used by the flusher
+        private int forced;
+
+        private Segment(File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+        }
+
+        private void close() {
+            try {
+                // The mapping stays valid until the buffer is collected
+                this.raf.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static final class SegmentReader implements Reader {
+
+        private final File[] files;
+        private int fileIndex;
+
+        private RandomAccessFile raf;
+        private MappedByteBuffer buffer;
+        private int offset;
+
+        private long sequence;
+        private long timestamp;
+        private long nanoTime;
+        private long merchantMost;
+        private long merchantLeast;
+        private long customerMost;
+        private long customerLeast;
+        private int offerIndex;
+        private int amount;
+
+        private SegmentReader(File[] files) {
+            this.files = files;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (true) {
+                if (this.buffer != null && this.offset + RECORD_SIZE <= this.buffer.capacity()) {
+                    final long sequence = this.buffer.getLong(this.offset + SEQUENCE);
+                    // A empty record marks the end of the segment
+                    if (sequence != 0) {
+                        this.read(sequence);
+                        return true;
+                    }
+                }
+                if (!this.openNext()) {
+                    return false;
+                }
+            }
+        }
+
+        private void read(long sequence) {
+            final int offset = this.offset;
+            this.sequence = sequence;
+            this.timestamp = this.buffer.getLong(offset + TIMESTAMP);
+            this.nanoTime = this.buffer.getLong(offset + NANO_TIME);
+            this.merchantMost = this.buffer.getLong(offset + MERCHANT_MOST);
+            this.merchantLeast = this.buffer.getLong(offset + MERCHANT_LEAST);
+            this.customerMost = this.buffer.getLong(offset + CUSTOMER_MOST);
+            this.customerLeast = this.buffer.getLong(offset + CUSTOMER_LEAST);
+            this.offerIndex = this.buffer.getInt(offset + OFFER_INDEX);
+            this.amount = this.buffer.getInt(offset + AMOUNT);
+            this.offset += RECORD_SIZE;
+        }
+
+        private boolean openNext() throws IOException {
+            this.close();
+            if (this.fileIndex == this.files.length) {
+                return false;
+            }
+            this.raf = new RandomAccessFile(this.files[this.fileIndex++], "r");
+            this.buffer = this.raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, this.raf.length());
+            this.offset = 0;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.buffer = null;
+            if (this.raf != null) {
+                this.raf.close();
+                this.raf = null;
+            }
+        }
+
+        @Override
+        public long getSequence() {
+            return this.sequence;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return this.timestamp;
+        }
+
+        @Override
+        public long getNanoTime() {
+            return this.nanoTime;
+        }
+
+        @Override
+        public UUID getMerchantId() {
+            return new UUID(this.merchantMost, this.merchantLeast);
+        }
+
+        @Override
+        public int getOfferIndex() {
+            return this.offerIndex;
+        }
+
+        @Override
+        public UUID getCustomerId() {
+            return new UUID(this.customerMost, this.customerLeast);
+        }
+
+        @Override
+        public int getAmount() {
+            return this.amount;
+        }
+    }
+
+}
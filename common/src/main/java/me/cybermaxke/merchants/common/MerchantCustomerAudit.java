@@ -0,0 +1,118 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.bukkit.entity.Player;
+
+import com.google.common.collect.Sets;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantRegistry;
+
+/**
+ * Searches for the customers that are still known by their merchant while
+ * they left the server or don't have the window of the merchant open
+ * anymore, they are removed and reported. The entries of the index whose
+ * merchant doesn't know the player anymore are removed as well. This audit
+ * should be executed periodically on the main thread, only the merchants in
+ * the index and the registry are audited.
+ */
+public class MerchantCustomerAudit implements Runnable {
+
+    private final MerchantCustomerIndex index;
+    private final MerchantRegistry registry;
+    private final Logger logger;
+
+    // The amount of stale customers and entries that were found during the last run
+    private int removed;
+
+    /**
+     * Creates a new customer audit.
+     *
+     * @param index The index of the merchants of the players
+     * @param registry The registry of the merchants
+     * @param logger The logger to report to
+     */
+    public MerchantCustomerAudit(MerchantCustomerIndex index, MerchantRegistry registry, Logger logger) {
+        this.index = checkNotNull(index, "index");
+        this.registry = checkNotNull(registry, "registry");
+        this.logger = checkNotNull(logger, "logger");
+    }
+
+    @Override
+    public void run() {
+        final Set<Merchant> merchants = Sets.newIdentityHashSet();
+        merchants.addAll(this.index.getMerchants());
+        merchants.addAll(this.registry.getMerchants());
+
+        int removed = 0;
+        for (Merchant merchant : merchants) {
+            for (Player customer : merchant.getCustomers()) {
+                final boolean online = customer.isOnline();
+                if (online && MerchantCustomerReaper.isViewing(customer, merchant)) {
+                    continue;
+                }
+                this.logger.warning("Removing the stale customer " + customer.getName() + " of the merchant " + merchant.getUniqueId()
+                        + (online ? ", the window was replaced" : ", the player is offline"));
+                MerchantCustomerReaper.removeCustomer(merchant, customer, false);
+                this.index.remove(customer.getUniqueId(), merchant);
+                removed++;
+            }
+        }
+
+        for (Map.Entry<UUID, Merchant> entry : this.index.getEntries()) {
+            if (!hasCustomer(entry.getValue(), entry.getKey())) {
+                this.index.remove(entry.getKey(), entry.getValue());
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            this.logger.warning("Removed " + removed + " stale merchant customers");
+        }
+        this.removed = removed;
+    }
+
+    /**
+     * Gets the amount of stale customers and index entries that were
+     * removed during the last run.
+     *
+     * @return The amount
+     */
+    public int getRemovedLastRun() {
+        return this.removed;
+    }
+
+    private static boolean hasCustomer(Merchant merchant, UUID uniqueId) {
+        for (Player customer : merchant.getCustomers()) {
+            if (customer.getUniqueId().equals(uniqueId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
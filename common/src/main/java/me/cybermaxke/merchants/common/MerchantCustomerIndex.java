@@ -0,0 +1,112 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Maps;
+
+import me.cybermaxke.merchants.api.Merchant;
+
+/**
+ * Maps the unique ids of the players to the merchant whose window they
+ * have opened, so that the customers can be removed from their merchant
+ * without searching all the merchants. A player normally only has a single
+ * merchant open, opening another window closes the previous one.
+ */
+public class MerchantCustomerIndex {
+
+    private final ConcurrentMap<UUID, Merchant> merchants = Maps.newConcurrentMap();
+
+    /**
+     * Puts the merchant that the player opened.
+     *
+     * @param uniqueId The unique id of the player
+     * @param merchant The merchant
+     */
+    public void put(UUID uniqueId, Merchant merchant) {
+        checkNotNull(uniqueId, "uniqueId");
+        checkNotNull(merchant, "merchant");
+        this.merchants.put(uniqueId, merchant);
+    }
+
+    /**
+     * Gets the merchant that the player opened.
+     *
+     * @param uniqueId The unique id of the player
+     * @return The merchant, or {@code null} if not present
+     */
+    @Nullable
+    public Merchant get(UUID uniqueId) {
+        checkNotNull(uniqueId, "uniqueId");
+        return this.merchants.get(uniqueId);
+    }
+
+    /**
+     * Removes the merchant of the player, if the player is still
+     * mapped to the merchant.
+     *
+     * @param uniqueId The unique id of the player
+     * @param merchant The merchant
+     * @return Whether the merchant was removed
+     */
+    public boolean remove(UUID uniqueId, Merchant merchant) {
+        checkNotNull(uniqueId, "uniqueId");
+        checkNotNull(merchant, "merchant");
+        return this.merchants.remove(uniqueId, merchant);
+    }
+
+    /**
+     * Gets the amount of players that have a merchant open.
+     *
+     * @return The size
+     */
+    public int size() {
+        return this.merchants.size();
+    }
+
+    /**
+     * Gets a view of the entries of the index.
+     *
+     * @return The entries
+     */
+    public Set<Map.Entry<UUID, Merchant>> getEntries() {
+        return Collections.unmodifiableSet(this.merchants.entrySet());
+    }
+
+    /**
+     * Gets a view of the merchants in the index, a merchant
+     * is present once for every player.
+     *
+     * @return The merchants
+     */
+    public Collection<Merchant> getMerchants() {
+        return Collections.unmodifiableCollection(this.merchants.values());
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerKickEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.Inventory;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantInventory;
+
+/**
+ * Removes the players from their merchant once they quit, are kicked,
+ * die or change the world, so that the merchants don't keep the players
+ * reachable. The merchant is found through the {@link MerchantCustomerIndex}.
+ */
+public class MerchantCustomerReaper implements Listener {
+
+    private final MerchantCustomerIndex index;
+
+    /**
+     * Creates a new customer reaper.
+     *
+     * @param index The index of the merchants of the players
+     */
+    public MerchantCustomerReaper(MerchantCustomerIndex index) {
+        this.index = checkNotNull(index, "index");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        this.reap(event.getPlayer(), false);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onKick(PlayerKickEvent event) {
+        this.reap(event.getPlayer(), false);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDeath(PlayerDeathEvent event) {
+        this.reap(event.getEntity(), true);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        this.reap(event.getPlayer(), true);
+    }
+
+    /**
+     * Removes the player from the merchant that the player opened.
+     *
+     * @param player The player
+     * @param close Whether the window should be closed if it is still open
+     */
+    public void reap(Player player, boolean close) {
+        checkNotNull(player, "player");
+        final Merchant merchant = this.index.get(player.getUniqueId());
+        if (merchant != null) {
+            removeCustomer(merchant, player, close);
+            // The merchant removes the entry, unless it didn't know the customer
+            this.index.remove(player.getUniqueId(), merchant);
+        }
+    }
+
+    // Removes the customer, the window is only closed if it is still the window of the merchant.
+    static void removeCustomer(Merchant merchant, Player player, boolean close) {
+        if ((!close || !isViewing(player, merchant)) && merchant instanceof ReapableMerchant) {
+            ((ReapableMerchant) merchant).reapCustomer(player);
+        } else {
+            merchant.removeCustomer(player);
+        }
+    }
+
+    // Gets whether the window of the merchant is the open window of the player.
+    static boolean isViewing(Player player, Merchant merchant) {
+        final Inventory top = player.getOpenInventory().getTopInventory();
+        return top instanceof MerchantInventory && ((MerchantInventory) top).getMerchant() == merchant;
+    }
+
+}
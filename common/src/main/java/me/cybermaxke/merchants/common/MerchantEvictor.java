@@ -0,0 +1,96 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantRegistry;
+
+/**
+ * Evicts the offers of the registered merchants that have been idle for
+ * the idle time. This evictor should be executed periodically on the main
+ * thread, merchants that aren't registered are never evicted.
+ */
+public class MerchantEvictor implements Runnable {
+
+    private final MerchantRegistry registry;
+    private final long idleTime;
+
+    // The amount of merchants that were evicted during the last run
+    private int evicted;
+    // The amount of merchants that are evicted after the last run
+    private int evictedTotal;
+
+    /**
+     * Creates a new merchant evictor.
+     *
+     * @param registry The registry of the merchants
+     * @param idleTime The time that a merchant has to be idle
+     * @param unit The unit of the idle time
+     */
+    public MerchantEvictor(MerchantRegistry registry, long idleTime, TimeUnit unit) {
+        checkArgument(idleTime > 0, "idleTime must be greater then 0");
+        this.registry = checkNotNull(registry, "registry");
+        this.idleTime = unit.toMillis(idleTime);
+    }
+
+    @Override
+    public void run() {
+        final long idleSince = System.currentTimeMillis() - this.idleTime;
+
+        int evicted = 0;
+        int evictedTotal = 0;
+        for (Merchant merchant : this.registry.getMerchants()) {
+            if (merchant instanceof EvictableMerchant) {
+                final EvictableMerchant merchant0 = (EvictableMerchant) merchant;
+                if (merchant0.evict(idleSince)) {
+                    evicted++;
+                }
+                if (merchant0.isEvicted()) {
+                    evictedTotal++;
+                }
+            }
+        }
+        this.evicted = evicted;
+        this.evictedTotal = evictedTotal;
+    }
+
+    /**
+     * Gets the amount of merchants that were evicted during the last run.
+     *
+     * @return The amount of evicted merchants
+     */
+    public int getEvictedLastRun() {
+        return this.evicted;
+    }
+
+    /**
+     * Gets the amount of merchants that were evicted at the end of the last run.
+     *
+     * @return The amount of evicted merchants
+     */
+    public int getEvictedTotal() {
+        return this.evictedTotal;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies in microseconds into logarithmic buckets. Every power
+ * of two is split into eight buckets, so the reported percentiles are at
+ * most 12.5% above the real values. Latencies above a minute are recorded
+ * as a minute.
+ */
+public class MerchantLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // The highest latency that can be recorded, about 67 seconds
+    private static final long MAX_VALUE = (1L << 26) - 1;
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the latency.
+     *
+     * @param latency The latency
+     * @param unit The unit of the latency
+     */
+    public void record(long latency, TimeUnit unit) {
+        checkNotNull(unit, "unit");
+        final long value = Math.min(MAX_VALUE, Math.max(0L, unit.toMicros(latency)));
+
+        this.counts.incrementAndGet(indexOf(value));
+        this.count.incrementAndGet();
+
+        long max;
+        while (value > (max = this.max.get())) {
+            if (this.max.compareAndSet(max, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of latencies that were recorded since the last reset.
+     *
+     * @return The amount
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Gets the highest latency that was recorded since the last reset.
+     *
+     * @param unit The unit of the latency
+     * @return The highest latency
+     */
+    public long getMax(TimeUnit unit) {
+        checkNotNull(unit, "unit");
+        return unit.convert(this.max.get(), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Gets the latency below which the fraction of the recorded latencies
+     * fall, for example {@code 0.99} for the 99th percentile.
+     *
+     * @param fraction The fraction, between 0 and 1
+     * @param unit The unit of the latency
+     * @return The latency, or 0 if nothing was recorded
+     */
+    public long getPercentile(double fraction, TimeUnit unit) {
+        checkArgument(fraction >= 0.0 && fraction <= 1.0, "fraction must be between 0 and 1");
+        checkNotNull(unit, "unit");
+
+        final long count = this.count.get();
+        if (count == 0) {
+            return 0L;
+        }
+        final long target = Math.max(1L, (long) Math.ceil(fraction * count));
+        final long max = this.max.get();
+
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += this.counts.get(i);
+            if (total >= target) {
+                // The bucket can't contain values above the highest latency
+                return unit.convert(Math.min(upperBoundOf(i), max), TimeUnit.MICROSECONDS);
+            }
+        }
+        return unit.convert(max, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Removes all the recorded latencies.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0L);
+        }
+        this.count.set(0L);
+        this.max.set(0L);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // The amount of bits below the sub bucket bits
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.common.collect.Lists;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantRegistry;
+
+/**
+ * Logs the open latency percentiles of the registered merchants that were
+ * opened since the last run, the slowest merchants first. The latencies
+ * are reset after every run. This reporter should be executed periodically
+ * on the main thread.
+ */
+public class MerchantLatencyReporter implements Runnable {
+
+    private final MerchantRegistry registry;
+    private final Logger logger;
+    private final int limit;
+
+    /**
+     * Creates a new latency reporter.
+     *
+     * @param registry The registry of the merchants
+     * @param logger The logger to report to
+     * @param limit The maximum amount of merchants per report
+     */
+    public MerchantLatencyReporter(MerchantRegistry registry, Logger logger, int limit) {
+        checkArgument(limit > 0, "limit must be greater then 0");
+        this.registry = checkNotNull(registry, "registry");
+        this.logger = checkNotNull(logger, "logger");
+        this.limit = limit;
+    }
+
+    @Override
+    public void run() {
+        final List<Entry> entries = Lists.newArrayList();
+        for (Merchant merchant : this.registry.getMerchants()) {
+            if (merchant instanceof InstrumentedMerchant) {
+                final MerchantLatencyHistogram histogram = ((InstrumentedMerchant) merchant).getOpenLatency();
+                if (histogram != null && histogram.getCount() > 0) {
+                    entries.add(new Entry(merchant, histogram));
+                }
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                return o1.p99 < o2.p99 ? 1 : o1.p99 == o2.p99 ? 0 : -1;
+            }
+
+        });
+
+        this.logger.info("Open latencies of the " + entries.size() + " opened merchants:");
+        for (Entry entry : entries.subList(0, Math.min(this.limit, entries.size()))) {
+            final MerchantLatencyHistogram histogram = entry.histogram;
+            this.logger.info(String.format("  %s (%s): opens=%d, p50=%.3f ms, p90=%.3f ms, p99=%.3f ms, max=%.3f ms",
+                    entry.merchant.getUniqueId(), entry.merchant.getTitle(), histogram.getCount(),
+                    toMillis(histogram.getPercentile(0.5, TimeUnit.MICROSECONDS)),
+                    toMillis(histogram.getPercentile(0.9, TimeUnit.MICROSECONDS)),
+                    toMillis(entry.p99), toMillis(histogram.getMax(TimeUnit.MICROSECONDS))));
+        }
+        for (Entry entry : entries) {
+            entry.histogram.reset();
+        }
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static final class Entry {
+
+        private final Merchant merchant;
+        private final MerchantLatencyHistogram histogram;
+
+        // The percentile that is used to sort the merchants
+        private final long p99;
+
+        private Entry(Merchant merchant, MerchantLatencyHistogram histogram) {
+            this.p99 = histogram.getPercentile(0.99, TimeUnit.MICROSECONDS);
+            this.histogram = histogram;
+            this.merchant = merchant;
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the merchant mutations that are requested by other threads and
+ * applies all of them at once, when the queue is executed. This queue should
+ * be executed every tick on the main thread.
+ *
+ * <p>The mutations can be queued from any thread without locking, they
+ * are applied in the order that they were queued.</p>
+ */
+public class MerchantMutationQueue implements Runnable, Executor {
+
+    private final Logger logger;
+
+    // The mutations that are waiting to be applied
+    private final Queue<Runnable> mutations = new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * Creates a new mutation queue.
+     *
+     * @param logger The logger of the mutation errors
+     */
+    public MerchantMutationQueue(Logger logger) {
+        this.logger = checkNotNull(logger, "logger");
+    }
+
+    /**
+     * Queues the mutation, it will be applied the next time this queue runs.
+     *
+     * @param mutation The mutation
+     */
+    @Override
+    public void execute(Runnable mutation) {
+        this.mutations.add(checkNotNull(mutation, "mutation"));
+    }
+
+    @Override
+    public void run() {
+        Runnable mutation;
+        while ((mutation = this.mutations.poll()) != null) {
+            try {
+                mutation.run();
+            } catch (Throwable t) {
+                this.logger.log(Level.SEVERE, "An error occurred while applying a merchant mutation", t);
+            }
+        }
+    }
+
+}
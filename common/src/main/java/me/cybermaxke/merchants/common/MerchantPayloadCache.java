@@ -0,0 +1,128 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Shares the encoded offer lists between merchants. Merchants that have
+ * the same offers in the same state will encode to the same bytes, so
+ * only the first one has to encode them. A payload is kept as long as a
+ * merchant still uses it.
+ */
+public class MerchantPayloadCache {
+
+    // The values are weak, the merchants keep their payloads
+    private final Map<Key, byte[]> payloads = new MapMaker().weakValues().makeMap();
+
+    /**
+     * Gets the payload that is encoded for the key.
+     *
+     * @param key The key
+     * @return The payload, or {@code null} if not present
+     */
+    public byte[] get(Key key) {
+        checkNotNull(key, "key");
+        return this.payloads.get(key);
+    }
+
+    /**
+     * Puts the payload that is encoded for the key.
+     *
+     * @param key The key
+     * @param payload The payload
+     */
+    public void put(Key key, byte[] payload) {
+        checkNotNull(key, "key");
+        checkNotNull(payload, "payload");
+        this.payloads.put(key, payload);
+    }
+
+    /**
+     * Identifies an encoded offer list by the identities of the offers and
+     * the versions of their states. Offers have to increase their version
+     * every time something changes that is encoded.
+     */
+    public static final class Key {
+
+        private final Object[] offers;
+        private final int[] versions;
+
+        // Different encodings of the same offers, like the protocol version
+        private final int variant;
+
+        private final int hashCode;
+
+        /**
+         * Creates a new key, the arrays may not be modified afterwards.
+         *
+         * @param offers The offers
+         * @param versions The state versions of the offers
+         * @param variant The variant of the encoding
+         */
+        public Key(Object[] offers, int[] versions, int variant) {
+            checkNotNull(offers, "offers");
+            checkNotNull(versions, "versions");
+            checkArgument(offers.length == versions.length, "offers and versions differ in length");
+
+            this.offers = offers;
+            this.versions = versions;
+            this.variant = variant;
+
+            int hashCode = variant;
+            for (int i = 0; i < offers.length; i++) {
+                hashCode = 31 * hashCode + System.identityHashCode(offers[i]);
+                hashCode = 31 * hashCode + versions[i];
+            }
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) object;
+            if (this.hashCode != other.hashCode || this.variant != other.variant ||
+                    this.offers.length != other.offers.length) {
+                return false;
+            }
+            for (int i = 0; i < this.offers.length; i++) {
+                if (this.offers[i] != other.offers[i]) {
+                    return false;
+                }
+            }
+            return Arrays.equals(this.versions, other.versions);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+/**
+ * The constants of the binary merchant snapshot format.
+ *
+ * <p>A stream starts with a header of the magic number, the version and the
+ * flags, followed by length prefixed merchant records and a {@code 0} length
+ * that marks the end. The records are deflated if the compressed flag is set.
+ * Every record contains the unique id, the title, the json flag and the
+ * offers; every offer the result item, the first item, the optional second
+ * item, the uses, the maximum uses and the customer uses flag.</p>
+ */
+final class MerchantSnapshotFormat {
+
+    static final int MAGIC = 0x4d534e50;
+    static final int VERSION = 1;
+
+    static final int FLAG_COMPRESSED = 0x1;
+
+    // The maximum size of a record, to fail fast on corrupt data
+    static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private MerchantSnapshotFormat() {
+    }
+
+}
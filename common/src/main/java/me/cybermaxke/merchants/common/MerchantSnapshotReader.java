@@ -0,0 +1,160 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import me.cybermaxke.merchants.api.MerchantSnapshot;
+
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Reads {@link MerchantSnapshot}s one by one from a stream in the binary
+ * snapshot format. The records can be read without decoding them, so they
+ * can be decoded on other threads with {@link #decode(byte[], ItemCodec)}.
+ * The reader isn't thread safe.
+ */
+public class MerchantSnapshotReader implements Closeable {
+
+    private final ItemCodec codec;
+
+    private final DataInputStream in;
+    private final Inflater inflater;
+
+    private boolean finished;
+
+    /**
+     * Creates a new reader and reads the header from the stream.
+     *
+     * @param in The input stream
+     * @param codec The codec of the items
+     * @throws IOException If the header is invalid
+     */
+    public MerchantSnapshotReader(InputStream in, ItemCodec codec) throws IOException {
+        checkNotNull(in, "in");
+        this.codec = checkNotNull(codec, "codec");
+
+        final DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MerchantSnapshotFormat.MAGIC) {
+            throw new IOException("Not a merchant snapshot stream");
+        }
+        final int version = header.readUnsignedByte();
+        if (version != MerchantSnapshotFormat.VERSION) {
+            throw new IOException("Unsupported merchant snapshot version: " + version);
+        }
+        final int flags = header.readUnsignedByte();
+        if ((flags & MerchantSnapshotFormat.FLAG_COMPRESSED) != 0) {
+            this.inflater = new Inflater();
+            this.in = new DataInputStream(new InflaterInputStream(in, this.inflater, 8192));
+        } else {
+            this.inflater = null;
+            this.in = header;
+        }
+    }
+
+    /**
+     * Reads the next record without decoding it.
+     *
+     * @return The record, or {@code null} if there are no records left
+     * @throws IOException If the record couldn't be read
+     */
+    public byte[] readRecord() throws IOException {
+        if (this.finished) {
+            return null;
+        }
+        final int length = this.in.readInt();
+        if (length == 0) {
+            this.finished = true;
+            return null;
+        }
+        if (length < 0 || length > MerchantSnapshotFormat.MAX_RECORD_SIZE) {
+            throw new IOException("Invalid merchant record length: " + length);
+        }
+        final byte[] record = new byte[length];
+        this.in.readFully(record);
+        return record;
+    }
+
+    /**
+     * Reads and decodes the next snapshot.
+     *
+     * @return The snapshot, or {@code null} if there are no snapshots left
+     * @throws IOException If the snapshot couldn't be read
+     */
+    public MerchantSnapshot read() throws IOException {
+        final byte[] record = this.readRecord();
+        return record == null ? null : decode(record, this.codec);
+    }
+
+    /**
+     * Decodes the record into a snapshot, this can be done on any thread.
+     *
+     * @param record The record
+     * @param codec The codec of the items
+     * @return The snapshot
+     * @throws IOException If the record is invalid
+     */
+    public static MerchantSnapshot decode(byte[] record, ItemCodec codec) throws IOException {
+        checkNotNull(record, "record");
+        checkNotNull(codec, "codec");
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        final UUID uniqueId = new UUID(in.readLong(), in.readLong());
+        final String title = in.readUTF();
+        final boolean jsonTitle = in.readBoolean();
+
+        final int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid offer count: " + count);
+        }
+        final MerchantSnapshot.Offer[] offers = new MerchantSnapshot.Offer[count];
+        for (int i = 0; i < count; i++) {
+            final ItemStack result = codec.read(in);
+            final ItemStack item1 = codec.read(in);
+            final ItemStack item2 = in.readBoolean() ? codec.read(in) : null;
+            final int uses = in.readInt();
+            final int maxUses = in.readInt();
+            final boolean customerUses = in.readBoolean();
+            offers[i] = new MerchantSnapshot.Offer(result, item1, item2, uses, maxUses, customerUses);
+        }
+        return new MerchantSnapshot(uniqueId, title, jsonTitle, Arrays.asList(offers));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.in.close();
+        } finally {
+            if (this.inflater != null) {
+                this.inflater.end();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import me.cybermaxke.merchants.api.MerchantSnapshot;
+
+import org.bukkit.inventory.ItemStack;
+
+import com.google.common.base.Optional;
+
+/**
+ * Writes {@link MerchantSnapshot}s one by one to a stream in the binary
+ * snapshot format. The writer isn't thread safe.
+ */
+public class MerchantSnapshotWriter implements Closeable {
+
+    private final ItemCodec codec;
+
+    // The output of the records, deflated if compressed
+    private final DataOutputStream out;
+    private final Deflater deflater;
+
+    // The record that is being written, reused for every record
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+    private final DataOutputStream recordOut = new DataOutputStream(this.record);
+
+    private boolean closed;
+
+    /**
+     * Creates a new writer and writes the header to the stream.
+     *
+     * @param out The output stream
+     * @param codec The codec of the items
+     * @param compress Whether the records should be compressed
+     * @throws IOException If the header couldn't be written
+     */
+    public MerchantSnapshotWriter(OutputStream out, ItemCodec codec, boolean compress) throws IOException {
+        checkNotNull(out, "out");
+        this.codec = checkNotNull(codec, "codec");
+
+        final DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MerchantSnapshotFormat.MAGIC);
+        header.writeByte(MerchantSnapshotFormat.VERSION);
+        header.writeByte(compress ? MerchantSnapshotFormat.FLAG_COMPRESSED : 0);
+
+        if (compress) {
+            this.deflater = new Deflater(Deflater.BEST_SPEED);
+            this.out = new DataOutputStream(new DeflaterOutputStream(out, this.deflater, 8192));
+        } else {
+            this.deflater = null;
+            this.out = header;
+        }
+    }
+
+    /**
+     * Writes the snapshot to the stream.
+     *
+     * @param snapshot The snapshot
+     * @throws IOException If the snapshot couldn't be written
+     */
+    public void write(MerchantSnapshot snapshot) throws IOException {
+        checkNotNull(snapshot, "snapshot");
+        checkState(!this.closed, "writer is closed");
+
+        // Write the record first, so it can be prefixed by its length
+        this.record.reset();
+        writeRecord(this.recordOut, snapshot, this.codec);
+        this.recordOut.flush();
+
+        this.out.writeInt(this.record.size());
+        this.record.writeTo(this.out);
+    }
+
+    /**
+     * Encodes the snapshot into a single record, that can be
+     * decoded with {@link MerchantSnapshotReader#decode(byte[], ItemCodec)}.
+     *
+     * @param snapshot The snapshot
+     * @param codec The codec of the items
+     * @return The record
+     * @throws IOException If a item couldn't be encoded
+     */
+    public static byte[] encode(MerchantSnapshot snapshot, ItemCodec codec) throws IOException {
+        checkNotNull(snapshot, "snapshot");
+        checkNotNull(codec, "codec");
+        final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(record);
+        writeRecord(out, snapshot, codec);
+        out.flush();
+        return record.toByteArray();
+    }
+
+    private static void writeRecord(DataOutputStream out, MerchantSnapshot snapshot, ItemCodec codec) throws IOException {
+        out.writeLong(snapshot.getUniqueId().getMostSignificantBits());
+        out.writeLong(snapshot.getUniqueId().getLeastSignificantBits());
+        out.writeUTF(snapshot.getTitle());
+        out.writeBoolean(snapshot.isTitleJson());
+
+        final List<MerchantSnapshot.Offer> offers = snapshot.getOffers();
+        out.writeInt(offers.size());
+        for (MerchantSnapshot.Offer offer : offers) {
+            codec.write(out, offer.getResultItem());
+            codec.write(out, offer.getFirstItem());
+            final Optional<ItemStack> item2 = offer.getSecondItem();
+            out.writeBoolean(item2.isPresent());
+            if (item2.isPresent()) {
+                codec.write(out, item2.get());
+            }
+            out.writeInt(offer.getUses());
+            out.writeInt(offer.getMaxUses());
+            out.writeBoolean(offer.hasCustomerUses());
+        }
+    }
+
+    /**
+     * Writes the end of the records and closes the stream.
+     *
+     * @throws IOException If the stream couldn't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.out.writeInt(0);
+            this.out.close();
+        } finally {
+            if (this.deflater != null) {
+                this.deflater.end();
+            }
+        }
+    }
+
+}
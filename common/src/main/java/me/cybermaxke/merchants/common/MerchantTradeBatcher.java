@@ -0,0 +1,196 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantOffer;
+import me.cybermaxke.merchants.api.MerchantTradeBatchListener;
+
+import org.bukkit.entity.Player;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Collects the trades that happen during a tick and passes them to the
+ * {@link MerchantTradeBatchListener}s at once, when the batcher is
+ * executed. This batcher should be executed every tick on the main thread.
+ *
+ * <p>The trades are stored in buffers that are reused every tick, so
+ * recording a trade doesn't allocate anything once the buffers grew
+ * big enough.</p>
+ */
+public class MerchantTradeBatcher implements Runnable {
+
+    private final Logger logger;
+
+    // The listeners that receive the trades of all the merchants
+    private final Channel global = new Channel();
+
+    // The channels of the merchants that have trades in this tick
+    private final List<Channel> pending = Lists.newArrayList();
+
+    /**
+     * Creates a new trade batcher.
+     *
+     * @param logger The logger of the listener errors
+     */
+    public MerchantTradeBatcher(Logger logger) {
+        this.logger = checkNotNull(logger, "logger");
+    }
+
+    /**
+     * Gets the channel of the listeners that receive
+     * the trades of all the merchants.
+     *
+     * @return The channel
+     */
+    public Channel getGlobalChannel() {
+        return this.global;
+    }
+
+    /**
+     * Records the trade for the global listeners and the listeners
+     * of the channel of the merchant.
+     *
+     * @param channel The channel of the merchant
+     * @param merchant The merchant
+     * @param offer The offer
+     * @param customer The customer
+     */
+    public void add(Channel channel, Merchant merchant, MerchantOffer offer, Player customer) {
+        this.add0(this.global, merchant, offer, customer);
+        this.add0(channel, merchant, offer, customer);
+    }
+
+    private void add0(Channel channel, Merchant merchant, MerchantOffer offer, Player customer) {
+        if (channel.listenerArray.length == 0) {
+            return;
+        }
+        if (channel.buffer == null) {
+            channel.buffer = new MerchantTradeBuffer();
+        }
+        if (channel.buffer.isEmpty()) {
+            this.pending.add(channel);
+        }
+        channel.buffer.add(merchant, offer, customer);
+    }
+
+    @Override
+    public void run() {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+
+        // Don't use a iterator, the listeners may trade
+        // and those trades will be in the next batch
+        final int size = this.pending.size();
+        for (int i = 0; i < size; i++) {
+            final Channel channel = this.pending.get(i);
+            final MerchantTradeBuffer buffer = channel.buffer;
+
+            // Swap the buffer, so new trades are not added to the batch
+            channel.buffer = channel.spare;
+            channel.spare = null;
+
+            for (MerchantTradeBatchListener listener : channel.listenerArray) {
+                try {
+                    listener.onTrades(buffer);
+                } catch (Throwable t) {
+                    this.logger.log(Level.SEVERE, "An error occurred while passing a trade batch to " + listener, t);
+                }
+            }
+
+            buffer.clear();
+            channel.spare = buffer;
+        }
+
+        // Keep the channels that got trades during the listeners
+        this.pending.subList(0, size).clear();
+    }
+
+    /**
+     * The batch listeners of a merchant, or of all the merchants. The
+     * listeners can be added and removed from any thread.
+     */
+    public static final class Channel {
+
+        private final Set<MerchantTradeBatchListener> listeners = Sets.newLinkedHashSet();
+
+        // The listeners as array, replaced every time the listeners
+        // change so the batcher can read it without locking
+        private volatile MerchantTradeBatchListener[] listenerArray = new MerchantTradeBatchListener[0];
+
+        // The buffer of the current tick and the one that was passed before
+        private MerchantTradeBuffer buffer;
+        private MerchantTradeBuffer spare;
+
+        /**
+         * Adds the listener to the channel.
+         *
+         * @param listener The listener
+         * @return {@code true} if not added before
+         */
+        public synchronized boolean addListener(MerchantTradeBatchListener listener) {
+            checkNotNull(listener, "listener");
+            if (this.listeners.add(listener)) {
+                this.updateListenerArray();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Removes the listener from the channel.
+         *
+         * @param listener The listener
+         * @return {@code true} if added before
+         */
+        public synchronized boolean removeListener(MerchantTradeBatchListener listener) {
+            checkNotNull(listener, "listener");
+            if (this.listeners.remove(listener)) {
+                this.updateListenerArray();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Gets the listeners of the channel.
+         *
+         * @return The listeners
+         */
+        public Collection<MerchantTradeBatchListener> getListeners() {
+            return Lists.newArrayList(this.listenerArray);
+        }
+
+        private void updateListenerArray() {
+            this.listenerArray = this.listeners.toArray(new MerchantTradeBatchListener[this.listeners.size()]);
+        }
+    }
+
+}
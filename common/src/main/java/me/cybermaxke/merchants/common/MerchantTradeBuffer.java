@@ -0,0 +1,93 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.util.Arrays;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantOffer;
+import me.cybermaxke.merchants.api.MerchantTradeBatch;
+
+import org.bukkit.entity.Player;
+
+/**
+ * A trade batch that stores the trades in arrays, which are
+ * reused after the buffer is cleared.
+ */
+final class MerchantTradeBuffer implements MerchantTradeBatch {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Merchant[] merchants = new Merchant[INITIAL_CAPACITY];
+    private MerchantOffer[] offers = new MerchantOffer[INITIAL_CAPACITY];
+    private Player[] customers = new Player[INITIAL_CAPACITY];
+
+    private int size;
+
+    void add(Merchant merchant, MerchantOffer offer, Player customer) {
+        if (this.size == this.merchants.length) {
+            final int capacity = this.size << 1;
+            this.merchants = Arrays.copyOf(this.merchants, capacity);
+            this.offers = Arrays.copyOf(this.offers, capacity);
+            this.customers = Arrays.copyOf(this.customers, capacity);
+        }
+        this.merchants[this.size] = merchant;
+        this.offers[this.size] = offer;
+        this.customers[this.size] = customer;
+        this.size++;
+    }
+
+    void clear() {
+        // Release the references, but keep the arrays
+        Arrays.fill(this.merchants, 0, this.size, null);
+        Arrays.fill(this.offers, 0, this.size, null);
+        Arrays.fill(this.customers, 0, this.size, null);
+        this.size = 0;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Merchant getMerchant(int index) {
+        checkElementIndex(index, this.size);
+        return this.merchants[index];
+    }
+
+    @Override
+    public MerchantOffer getOffer(int index) {
+        checkElementIndex(index, this.size);
+        return this.offers[index];
+    }
+
+    @Override
+    public Player getCustomer(int index) {
+        checkElementIndex(index, this.size);
+        return this.customers[index];
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import me.cybermaxke.merchants.api.AsyncMerchantTradeListener;
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantTradeEvent;
+
+/**
+ * Passes the trade events to the {@link AsyncMerchantTradeListener}s on
+ * worker threads. Every merchant is bound to one worker, so its events are
+ * handled in the order of the trades. The events may only be dispatched
+ * from the main thread, every worker has a single producer queue.
+ *
+ * <p>The workers are started when the first event is dispatched.</p>
+ */
+public class MerchantTradeDispatcher {
+
+    /**
+     * What happens when the queue of a worker is full.
+     */
+    public enum Backpressure {
+        /**
+         * The main thread waits until the worker made space.
+         */
+        BLOCK,
+        /**
+         * The event is dropped and counted.
+         */
+        DROP,
+        /**
+         * The listeners are called on the main thread, after the worker
+         * handled the queued events of the same merchant. The main thread
+         * only waits until those are handled, not until the queue is empty.
+         */
+        CALLER_RUNS,
+    }
+
+    // The time that a idle worker or a blocked producer waits
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Logger logger;
+    private final Backpressure backpressure;
+    private final Worker[] workers;
+
+    // The sequence number of the last queued event of every merchant,
+    // only used by the main thread
+    private final Map<Merchant, Long> lastQueued = new WeakHashMap<Merchant, Long>();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    private volatile boolean started;
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new trade dispatcher.
+     *
+     * @param logger The logger of the listener errors
+     * @param workers The amount of worker threads
+     * @param capacity The amount of events that can be queued per worker
+     * @param backpressure What happens when a queue is full
+     */
+    public MerchantTradeDispatcher(Logger logger, int workers, int capacity, Backpressure backpressure) {
+        checkArgument(workers > 0, "workers must be greater then 0");
+        this.logger = checkNotNull(logger, "logger");
+        this.backpressure = checkNotNull(backpressure, "backpressure");
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker(i, capacity);
+        }
+    }
+
+    /**
+     * Dispatches the trade event to the listeners.
+     *
+     * @param event The event
+     * @param listeners The listeners
+     */
+    public void dispatch(MerchantTradeEvent event, Collection<AsyncMerchantTradeListener> listeners) {
+        checkNotNull(event, "event");
+        checkNotNull(listeners, "listeners");
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        // Copy the listeners, they may be changed before the event is handled
+        final Task task = new Task(event, listeners.toArray(new AsyncMerchantTradeListener[listeners.size()]));
+        if (!this.running) {
+            this.callerRuns.incrementAndGet();
+            this.run(task);
+            return;
+        }
+        if (!this.started) {
+            this.start();
+        }
+
+        final Merchant merchant = event.getMerchant();
+        final Worker worker = this.getWorker(merchant);
+        if (worker.queue.offer(task)) {
+            this.queued(merchant, worker);
+            return;
+        }
+        switch (this.backpressure) {
+            case BLOCK:
+                do {
+                    worker.wakeUp();
+                    LockSupport.parkNanos(PARK_NANOS);
+                } while (!worker.queue.offer(task));
+                this.queued(merchant, worker);
+                break;
+            case DROP:
+                this.dropped.incrementAndGet();
+                break;
+            case CALLER_RUNS:
+                // The queued events of the merchant are handled first, so they keep their order
+                final Long last = this.lastQueued.get(merchant);
+                if (last != null) {
+                    while (worker.handled < last) {
+                        worker.wakeUp();
+                        LockSupport.parkNanos(PARK_NANOS);
+                    }
+                }
+                this.callerRuns.incrementAndGet();
+                this.run(task);
+                break;
+        }
+    }
+
+    // Called when a event of the merchant was queued for the worker.
+    private void queued(Merchant merchant, Worker worker) {
+        this.lastQueued.put(merchant, ++worker.queued);
+        worker.wakeUp();
+    }
+
+    /**
+     * Gets the amount of events that are waiting to be handled.
+     *
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : this.workers) {
+            depth += worker.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Gets the amount of events that were dropped because a queue was full.
+     *
+     * @return The dropped events
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Gets the amount of events that were handled on the caller thread.
+     *
+     * @return The caller run events
+     */
+    public long getCallerRuns() {
+        return this.callerRuns.get();
+    }
+
+    /**
+     * Stops the workers after they handled the queued events. The events
+     * that are dispatched afterwards are handled on the caller thread.
+     *
+     * @param timeout The maximum time to wait for every worker
+     * @param unit The unit of the timeout
+     * @return {@code true} if all the workers finished in time
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        this.running = false;
+        if (!this.started) {
+            return true;
+        }
+        boolean finished = true;
+        for (Worker worker : this.workers) {
+            worker.wakeUp();
+            try {
+                worker.thread.join(unit.toMillis(timeout));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            finished &= !worker.thread.isAlive();
+        }
+        return finished;
+    }
+
+    private synchronized void start() {
+        if (this.started) {
+            return;
+        }
+        for (Worker worker : this.workers) {
+            worker.thread.start();
+        }
+        this.started = true;
+    }
+
+    private Worker getWorker(Merchant merchant) {
+        // The identity hash code never changes, so the merchant keeps its worker
+        final int hash = System.identityHashCode(merchant);
+        return this.workers[(hash & 0x7fffffff) % this.workers.length];
+    }
+
+    private void run(Task task) {
+        for (AsyncMerchantTradeListener listener : task.listeners) {
+            try {
+                listener.onTrade(task.event);
+            } catch (Throwable t) {
+                this.logger.log(Level.SEVERE, "An error occurred while passing a trade event to " + listener, t);
+            }
+        }
+    }
+
+    private static final class Task {
+
+        private final MerchantTradeEvent event;
+        private final AsyncMerchantTradeListener[] listeners;
+
+        private Task(MerchantTradeEvent event, AsyncMerchantTradeListener[] listeners) {
+            this.event = event;
+            this.listeners = listeners;
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        private final SpscRingBuffer<Task> queue;
+        private final Thread thread;
+
+        // Whether the worker is parked because the queue was empty
+        private volatile boolean idle;
+
+        // The amount of queued events, only used by the main thread,
+        // and the amount of events that the worker handled
+        private long queued;
+        private volatile long handled;
+
+        private Worker(int index, int capacity) {
+            this.queue = new SpscRingBuffer<Task>(capacity);
+            this.thread = new Thread(this, "Merchant Trade Worker #" + (index + 1));
+            this.thread.setDaemon(true);
+        }
+
+        private void wakeUp() {
+            if (this.idle) {
+                LockSupport.unpark(this.thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Task task = this.queue.poll();
+                if (task != null) {
+                    MerchantTradeDispatcher.this.run(task);
+                    // Only written by the worker
+                    this.handled++;
+                    continue;
+                }
+                if (!MerchantTradeDispatcher.this.running) {
+                    // The queue is drained
+                    break;
+                }
+                this.idle = true;
+                // Check again, the producer may have missed the idle flag
+                if (this.queue.size() == 0 && MerchantTradeDispatcher.this.running) {
+                    LockSupport.parkNanos(this, PARK_NANOS * 50);
+                }
+                this.idle = false;
+            }
+        }
+    }
+
+}
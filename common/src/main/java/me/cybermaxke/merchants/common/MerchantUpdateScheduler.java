@@ -0,0 +1,109 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Collects the updates that are requested during a tick and runs
+ * every one of them once, when the scheduler is executed. This
+ * scheduler should be executed every tick on the main thread.
+ */
+public class MerchantUpdateScheduler implements Runnable {
+
+    private final Logger logger;
+
+    // The updates that are requested during this tick
+    private Set<Runnable> pending = Sets.newLinkedHashSet();
+
+    // The updates that are being executed, swapped with the
+    // pending updates to avoid allocating a new set every tick
+    private Set<Runnable> executing = Sets.newLinkedHashSet();
+
+    /**
+     * Creates a new update scheduler.
+     *
+     * @param logger The logger of the update errors
+     */
+    public MerchantUpdateScheduler(Logger logger) {
+        this.logger = checkNotNull(logger, "logger");
+    }
+
+    /**
+     * Schedules the update to be executed the next time this scheduler
+     * runs. Scheduling a update multiple times will only execute it once.
+     *
+     * @param update The update
+     * @return {@code true} if not scheduled before
+     */
+    public boolean schedule(Runnable update) {
+        checkNotNull(update, "update");
+        return this.pending.add(update);
+    }
+
+    /**
+     * Cancels the update if it is scheduled.
+     *
+     * @param update The update
+     * @return {@code true} if scheduled before
+     */
+    public boolean cancel(Runnable update) {
+        checkNotNull(update, "update");
+        return this.pending.remove(update);
+    }
+
+    /**
+     * Gets whether the update is scheduled.
+     *
+     * @param update The update
+     * @return {@code true} if scheduled
+     */
+    public boolean isScheduled(Runnable update) {
+        checkNotNull(update, "update");
+        return this.pending.contains(update);
+    }
+
+    @Override
+    public void run() {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+
+        // Updates that are scheduled by the executing updates will
+        // be executed the next time this scheduler runs
+        final Set<Runnable> executing = this.pending;
+        this.pending = this.executing;
+        this.executing = executing;
+
+        for (Runnable update : executing) {
+            try {
+                update.run();
+            } catch (Exception e) {
+                this.logger.log(Level.SEVERE, "An error occurred while sending a merchant update", e);
+            }
+        }
+        executing.clear();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import org.bukkit.entity.Player;
+
+/**
+ * A merchant that can forget a customer without closing the window of the
+ * customer, for customers that left the server or whose merchant window
+ * was already closed or replaced by another window.
+ */
+public interface ReapableMerchant {
+
+    /**
+     * Removes the customer and everything that the merchant keeps for
+     * the customer, without touching the window of the player. May only
+     * be called on the main thread.
+     *
+     * @param player The player
+     * @return Whether the player was a customer
+     */
+    boolean reapCustomer(Player player);
+
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock free queue with a single producer and a single consumer
+ * thread. The capacity is rounded up to a power of two.
+ */
+final class SpscRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> buffer;
+    private final int mask;
+
+    // The index of the next element to poll, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    // The index of the next element to offer, only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    SpscRingBuffer(int capacity) {
+        checkArgument(capacity > 0, "capacity must be greater then 0");
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new AtomicReferenceArray<E>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds the element at the tail of the queue, may only
+     * be called by the producer thread.
+     *
+     * @param element The element
+     * @return {@code false} if the queue is full
+     */
+    boolean offer(E element) {
+        final long tail = this.tail.get();
+        if (tail - this.head.get() > this.mask) {
+            return false;
+        }
+        this.buffer.lazySet((int) tail & this.mask, element);
+        // The element is visible before the new tail
+        this.tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Removes the element at the head of the queue, may only
+     * be called by the consumer thread.
+     *
+     * @return The element, or {@code null} if the queue is empty
+     */
+    E poll() {
+        final long head = this.head.get();
+        if (head == this.tail.get()) {
+            return null;
+        }
+        final int index = (int) head & this.mask;
+        final E element = this.buffer.get(index);
+        this.buffer.lazySet(index, null);
+        this.head.lazySet(head + 1);
+        return element;
+    }
+
+    int size() {
+        // Read the head first, so the size will never be negative
+        final long head = this.head.get();
+        return (int) (this.tail.get() - head);
+    }
+
+}
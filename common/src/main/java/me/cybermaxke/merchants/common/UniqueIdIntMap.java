@@ -0,0 +1,219 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.common;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A map from {@link UUID}s to ints that stores the keys and values in
+ * primitive arrays, using open addressing with linear probing. Unlike a
+ * {@link java.util.HashMap} no objects are created for the entries, which
+ * keeps large maps compact. This map is not thread safe.
+ */
+public class UniqueIdIntMap {
+
+    private static final int MIN_CAPACITY = 8;
+
+    // The most and least significant bits of the keys
+    private long[] mostBits;
+    private long[] leastBits;
+    private int[] values;
+    private boolean[] used;
+
+    private int size;
+
+    public UniqueIdIntMap() {
+        this.allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates a copy of the map.
+     *
+     * @return The copy
+     */
+    public UniqueIdIntMap copy() {
+        final UniqueIdIntMap copy = new UniqueIdIntMap();
+        copy.mostBits = this.mostBits.clone();
+        copy.leastBits = this.leastBits.clone();
+        copy.values = this.values.clone();
+        copy.used = this.used.clone();
+        copy.size = this.size;
+        return copy;
+    }
+
+    /**
+     * Gets the amount of entries in the map.
+     *
+     * @return The size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets whether the map contains the key.
+     *
+     * @param key The key
+     * @return Whether the key is present
+     */
+    public boolean containsKey(UUID key) {
+        checkNotNull(key, "key");
+        return this.indexOf(key.getMostSignificantBits(), key.getLeastSignificantBits()) >= 0;
+    }
+
+    /**
+     * Gets the value of the key.
+     *
+     * @param key The key
+     * @param defaultValue The value if the key isn't present
+     * @return The value
+     */
+    public int get(UUID key, int defaultValue) {
+        checkNotNull(key, "key");
+        final int index = this.indexOf(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        return index < 0 ? defaultValue : this.values[index];
+    }
+
+    /**
+     * Puts the value of the key.
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public void put(UUID key, int value) {
+        checkNotNull(key, "key");
+        final long most = key.getMostSignificantBits();
+        final long least = key.getLeastSignificantBits();
+
+        int index = this.indexOf(most, least);
+        if (index >= 0) {
+            this.values[index] = value;
+            return;
+        }
+
+        // Keep the load below three quarters
+        if ((this.size + 1) * 4 > this.used.length * 3) {
+            this.rehash(this.used.length * 2);
+        }
+
+        index = this.slot(most, least);
+        while (this.used[index]) {
+            index = (index + 1) & (this.used.length - 1);
+        }
+        this.mostBits[index] = most;
+        this.leastBits[index] = least;
+        this.values[index] = value;
+        this.used[index] = true;
+        this.size++;
+    }
+
+    /**
+     * Removes the key.
+     *
+     * @param key The key
+     * @return Whether the key was present
+     */
+    public boolean remove(UUID key) {
+        checkNotNull(key, "key");
+        int index = this.indexOf(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        if (index < 0) {
+            return false;
+        }
+
+        // Move the following entries back, so that
+        // the probing doesn't stop at the free slot
+        final int mask = this.used.length - 1;
+        int next = (index + 1) & mask;
+        while (this.used[next]) {
+            final int slot = this.slot(this.mostBits[next], this.leastBits[next]);
+            // Only move the entry if the free slot is between its slot and its position
+            if (((next - slot) & mask) >= ((next - index) & mask)) {
+                this.mostBits[index] = this.mostBits[next];
+                this.leastBits[index] = this.leastBits[next];
+                this.values[index] = this.values[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.used[index] = false;
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        Arrays.fill(this.used, false);
+        this.size = 0;
+    }
+
+    private int indexOf(long most, long least) {
+        final int mask = this.used.length - 1;
+        int index = this.slot(most, least);
+        while (this.used[index]) {
+            if (this.mostBits[index] == most && this.leastBits[index] == least) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(long most, long least) {
+        final long hash = most ^ least;
+        int h = (int) (hash ^ (hash >>> 32));
+        // Spread the bits, like the hash map does
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h & (this.used.length - 1);
+    }
+
+    private void allocate(int capacity) {
+        this.mostBits = new long[capacity];
+        this.leastBits = new long[capacity];
+        this.values = new int[capacity];
+        this.used = new boolean[capacity];
+    }
+
+    private void rehash(int capacity) {
+        final long[] mostBits = this.mostBits;
+        final long[] leastBits = this.leastBits;
+        final int[] values = this.values;
+        final boolean[] used = this.used;
+
+        this.allocate(capacity);
+        final int mask = capacity - 1;
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                int index = this.slot(mostBits[i], leastBits[i]);
+                while (this.used[index]) {
+                    index = (index + 1) & mask;
+                }
+                this.mostBits[index] = mostBits[i];
+                this.leastBits[index] = leastBits[i];
+                this.values[index] = values[i];
+                this.used[index] = true;
+            }
+        }
+    }
+}
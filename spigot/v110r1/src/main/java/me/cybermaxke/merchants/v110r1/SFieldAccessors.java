@@ -0,0 +1,75 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.v110r1;
+
+import java.lang.reflect.Field;
+
+import net.minecraft.server.v1_10_R1.ContainerMerchant;
+import net.minecraft.server.v1_10_R1.InventoryMerchant;
+
+/**
+ * The accessors of the nms fields that aren't accessible. The fields are
+ * resolved once when the plugin is enabled, instead of every time they
+ * are used.
+ */
+final class SFieldAccessors {
+
+    // The field of the merchant inventory in the container
+    private static Field fieldInventoryMerchant;
+
+    /**
+     * Resolves the fields.
+     *
+     * @throws IllegalStateException If one of the fields is missing
+     */
+    static void init() {
+        for (Field field : ContainerMerchant.class.getDeclaredFields()) {
+            if (field.getType().isAssignableFrom(InventoryMerchant.class)) {
+                fieldInventoryMerchant = makeAccessible(field);
+            }
+        }
+        if (fieldInventoryMerchant == null) {
+            throw new IllegalStateException("missing the merchant inventory field of " + ContainerMerchant.class.getName());
+        }
+    }
+
+    private static Field makeAccessible(Field field) {
+        field.setAccessible(true);
+        return field;
+    }
+
+    /**
+     * Sets the merchant inventory of the container.
+     *
+     * @param container The container
+     * @param inventory The merchant inventory
+     */
+    static void setInventoryMerchant(ContainerMerchant container, InventoryMerchant inventory) {
+        try {
+            fieldInventoryMerchant.set(container, inventory);
+        } catch (IllegalAccessException e) {
+            // The field is accessible
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private SFieldAccessors() {
+    }
+
+}
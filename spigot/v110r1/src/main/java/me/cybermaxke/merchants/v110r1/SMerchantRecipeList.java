@@ -0,0 +1,347 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.v110r1;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+import net.minecraft.server.v1_10_R1.Item;
+import net.minecraft.server.v1_10_R1.ItemStack;
+import net.minecraft.server.v1_10_R1.MerchantRecipe;
+import net.minecraft.server.v1_10_R1.MerchantRecipeList;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recipe list that indexes the recipes by the type of their first
+ * item, so that looking up the recipe for the items in the input slots
+ * doesn't have to compare every recipe of large merchants. The position
+ * of every recipe is tracked as well, so that the membership checks and
+ * removals of the merchant don't have to scan the list. The positions are
+ * updated by every append, insert, replacement and removal, and built
+ * again after the bulk modifications like sorting.
+ */
+class SMerchantRecipeList extends MerchantRecipeList {
+
+    private static final int[] NO_RECIPES = new int[0];
+
+    // The indexes of the recipes mapped by the type of their first item
+    private final Map<Long, int[]> index = Maps.newHashMap();
+
+    // The modification count the index was built for
+    private int indexModCount = -1;
+
+    // The list that is used to match the first recipe on its own
+    private final MerchantRecipeList probe = new MerchantRecipeList();
+
+    // The position of the recipe that was matched last, a traded
+    // recipe is always matched first so its position is known
+    private int matched = -1;
+
+    // The position of every recipe, mapped by identity
+    private final Map<Object, Position> positions = Maps.newIdentityHashMap();
+
+    // The modification count the positions were updated for, they are built
+    // again after the modifications that don't update them directly
+    private int positionsModCount;
+
+    @Override
+    public MerchantRecipe set(int index, MerchantRecipe recipe) {
+        final boolean upToDate = this.positionsModCount == this.modCount;
+        // Replacing isn't counted as a modification, but it changes the index
+        this.modCount++;
+        final MerchantRecipe old = super.set(index, recipe);
+        if (upToDate) {
+            if (old != recipe) {
+                this.release(old, index);
+                this.acquire(recipe, index);
+            }
+            this.positionsModCount = this.modCount;
+        }
+        return old;
+    }
+
+    @Override
+    public boolean add(MerchantRecipe recipe) {
+        final boolean upToDate = this.positionsModCount == this.modCount;
+        super.add(recipe);
+
+        // Appending doesn't move the other recipes
+        if (upToDate) {
+            this.acquire(recipe, this.size() - 1);
+            this.positionsModCount = this.modCount;
+        }
+        return true;
+    }
+
+    @Override
+    public void add(int index, MerchantRecipe recipe) {
+        final boolean upToDate = this.positionsModCount == this.modCount;
+        super.add(index, recipe);
+
+        if (upToDate) {
+            // The recipes after the inserted one move up, backwards so that only
+            // the first position of the duplicated recipes is moved
+            for (int i = this.size() - 1; i > index; i--) {
+                final Position position = this.positions.get(this.get(i));
+                if (position.first == i - 1) {
+                    position.first = i;
+                }
+            }
+            this.acquire(recipe, index);
+            this.positionsModCount = this.modCount;
+        }
+    }
+
+    @Override
+    public MerchantRecipe remove(int index) {
+        final boolean upToDate = this.positionsModCount == this.modCount;
+        final MerchantRecipe recipe = super.remove(index);
+
+        if (upToDate) {
+            // The recipes after the removed one move down
+            for (int i = index; i < this.size(); i++) {
+                final Position position = this.positions.get(this.get(i));
+                if (position.first == i + 1) {
+                    position.first = i;
+                }
+            }
+            this.release(recipe, index);
+            this.positionsModCount = this.modCount;
+        }
+        return recipe;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        final int index = this.indexOf(object);
+        if (index < 0) {
+            return false;
+        }
+
+        this.remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> collection) {
+        final boolean modified = super.removeAll(collection);
+        // The removal is linear, so is building the positions again
+        if (modified) {
+            this.buildPositions();
+        }
+        return modified;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        this.positions.clear();
+        this.positionsModCount = this.modCount;
+    }
+
+    /**
+     * Sorts the recipes and builds the positions again, this replaces
+     * the sort of the list on the java versions that have it.
+     *
+     * @param comparator The comparator
+     */
+    public void sort(Comparator<? super MerchantRecipe> comparator) {
+        final MerchantRecipe[] recipes = this.toArray(new MerchantRecipe[this.size()]);
+        Arrays.sort(recipes, comparator);
+        for (int i = 0; i < recipes.length; i++) {
+            super.set(i, recipes[i]);
+        }
+        this.modCount++;
+        this.buildPositions();
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return this.indexOf(object) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object object) {
+        if (this.positionsModCount != this.modCount) {
+            this.buildPositions();
+        }
+
+        final Position position = this.positions.get(object);
+        return position == null ? -1 : position.first;
+    }
+
+    /**
+     * Gets the position of the recipe, the position of the recipe that was
+     * matched last is checked first so that looking up a traded recipe
+     * doesn't depend on the positions.
+     *
+     * @param recipe The recipe
+     * @return The position, or -1 if not found
+     */
+    int indexOfMatched(Object recipe) {
+        final int matched = this.matched;
+        if (matched >= 0 && matched < this.size() && this.get(matched) == recipe) {
+            return matched;
+        }
+        return this.indexOf(recipe);
+    }
+
+    // Adds the recipe at the index to the positions.
+    private void acquire(Object recipe, int index) {
+        final Position position = this.positions.get(recipe);
+        if (position == null) {
+            this.positions.put(recipe, new Position(index));
+        } else {
+            position.count++;
+            if (index < position.first) {
+                position.first = index;
+            }
+        }
+    }
+
+    // Removes the recipe that was at the index from the positions.
+    private void release(Object recipe, int index) {
+        final Position position = this.positions.get(recipe);
+        if (--position.count == 0) {
+            this.positions.remove(recipe);
+        } else if (position.first == index) {
+            // Only the duplicated recipes are searched
+            int i = index;
+            while (this.get(i) != recipe) {
+                i++;
+            }
+            position.first = i;
+        }
+    }
+
+    // Builds the positions again, the positions of the remaining recipes are reused.
+    private void buildPositions() {
+        for (Position position : this.positions.values()) {
+            position.count = 0;
+        }
+        for (int i = this.size() - 1; i >= 0; i--) {
+            final Object recipe = this.get(i);
+            final Position position = this.positions.get(recipe);
+            if (position == null) {
+                this.positions.put(recipe, new Position(i));
+            } else {
+                position.first = i;
+                position.count++;
+            }
+        }
+        final Iterator<Position> it = this.positions.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().count == 0) {
+                it.remove();
+            }
+        }
+        this.positionsModCount = this.modCount;
+    }
+
+    @Override
+    public MerchantRecipe a(ItemStack itemStack1, ItemStack itemStack2, int selected) {
+        // Use the vanilla matching for the selected recipe
+        if (selected > 0 && selected < this.size()) {
+            this.matched = selected;
+            return super.a(itemStack1, itemStack2, selected);
+        }
+        if (itemStack1 == null) {
+            return null;
+        }
+
+        // Only the recipes with the same first item can match, they are
+        // checked in order with the vanilla matching of a selected recipe
+        for (int i : this.getCandidates(itemStack1)) {
+            final MerchantRecipe recipe;
+            if (i == 0) {
+                // The first recipe cannot be selected, that would search the
+                // whole list again, so it's matched in a list on its own
+                this.probe.add(this.get(0));
+                try {
+                    recipe = this.probe.a(itemStack1, itemStack2, 0);
+                } finally {
+                    this.probe.clear();
+                }
+            } else {
+                recipe = super.a(itemStack1, itemStack2, i);
+            }
+            if (recipe != null) {
+                this.matched = i;
+                return recipe;
+            }
+        }
+
+        return null;
+    }
+
+    private int[] getCandidates(ItemStack itemStack) {
+        if (this.indexModCount != this.modCount) {
+            this.buildIndex();
+        }
+
+        final int[] candidates = this.index.get(key(itemStack));
+        return candidates == null ? NO_RECIPES : candidates;
+    }
+
+    private void buildIndex() {
+        final Map<Long, List<Integer>> recipes = Maps.newHashMap();
+        for (int i = 0; i < this.size(); i++) {
+            final ItemStack itemStack = this.get(i).getBuyItem1();
+            if (itemStack == null) {
+                continue;
+            }
+
+            final Long key = key(itemStack);
+            List<Integer> indexes = recipes.get(key);
+            if (indexes == null) {
+                recipes.put(key, indexes = Lists.newArrayList());
+            }
+            indexes.add(i);
+        }
+
+        this.index.clear();
+        for (Map.Entry<Long, List<Integer>> entry : recipes.entrySet()) {
+            this.index.put(entry.getKey(), Ints.toArray(entry.getValue()));
+        }
+        this.indexModCount = this.modCount;
+    }
+
+    // The vanilla matching requires the same item and data
+    private static long key(ItemStack itemStack) {
+        return (long) Item.getId(itemStack.getItem()) << 32 | itemStack.getData() & 0xffffffffL;
+    }
+
+    // The first position of a recipe and the amount of times it's in the list
+    private static final class Position {
+
+        private int first;
+        private int count = 1;
+
+        private Position(int first) {
+            this.first = first;
+        }
+    }
+}
@@ -26,6 +26,8 @@ import net.minecraft.server.v1_10_R1.SlotMerchantResult;
 
 import org.bukkit.entity.Player;
 
+import java.util.UUID;
+
 import me.cybermaxke.merchants.api.MerchantTradeListener;
 
 public class SSlotMerchantResult extends SlotMerchantResult {
@@ -42,22 +44,38 @@ public class SSlotMerchantResult extends SlotMerchantResult {
         // Reset the on trade
         this.merchant.onTrade = null;
 
-        // Handle it like default
-        super.a(human, itemStack);
+        // The offers with customer uses use the uses of the human,
+        // the offers with own uses the uses of the merchant
+        final UUID previous = SMerchantOffer.setStockContext(human.getBukkitEntity().getUniqueId());
+        final SMerchant previousMerchant = SMerchantOffer.setUsesContext(this.merchant);
+        try {
+            // Handle it like default
+            super.a(human, itemStack);
 
-        // Catch the on trade
-        if (this.merchant.onTrade != null) {
-            // This will cause the update to be send to all the players
-            // except the user, that is done client side since 1.8
-            this.merchant.onTradePlayer = (EntityPlayer) human;
-            // Increment uses
-            this.merchant.onTrade.g();
-            // Reset the field for the gc
-            this.merchant.onTradePlayer = null;
+            // Catch the on trade
+            if (this.merchant.onTrade != null) {
+                // This will cause the update to be send to all the players
+                // except the user, that is done client side since 1.8
+                this.merchant.onTradePlayer = (EntityPlayer) human;
+                // Increment uses
+                this.merchant.onTrade.g();
+                // Reset the field for the gc
+                this.merchant.onTradePlayer = null;
+            }
+        } finally {
+            SMerchantOffer.setStockContext(previous);
+            SMerchantOffer.setUsesContext(previousMerchant);
+        }
 
+        if (this.merchant.onTrade != null) {
             for (MerchantTradeListener handler : this.merchant.handlers) {
                 handler.onTrade(this.merchant, this.merchant.onTrade, (Player) human.getBukkitEntity());
             }
+            this.merchant.addJournalTrade(this.merchant.onTrade, human.getBukkitEntity().getUniqueId());
+            this.merchant.addBatchTrade(this.merchant.onTrade, (Player) human.getBukkitEntity());
+            if (!this.merchant.asyncHandlers.isEmpty()) {
+                this.merchant.dispatchAsyncTrade(this.merchant.onTrade, human.getBukkitEntity().getUniqueId());
+            }
         }
     }
 }
@@ -18,8 +18,6 @@
  */
 package me.cybermaxke.merchants.v110r1;
 
-import java.lang.reflect.Field;
-
 import org.bukkit.craftbukkit.v1_11_R1.inventory.CraftInventoryView;
 
 import org.bukkit.entity.Player;
@@ -27,47 +25,36 @@ import org.bukkit.entity.Player;
 import net.minecraft.server.v1_11_R1.ContainerMerchant;
 import net.minecraft.server.v1_11_R1.EntityHuman;
 import net.minecraft.server.v1_11_R1.EntityPlayer;
-import net.minecraft.server.v1_11_R1.InventoryMerchant;
 import net.minecraft.server.v1_11_R1.Slot;
 
 public class SContainerMerchant extends ContainerMerchant {
 
-    // The field of the merchant inventory in the container
-    private static Field fieldInventoryMerchant;
-
     // The merchant we are trading with
     private final SMerchant merchant;
 
-    // The bukkit instance
+    private final EntityPlayer customer;
+    private final SInventoryMerchant inventory;
+
+    // The bukkit instance, only created once it is requested
     private CraftInventoryView bukkitEntity;
 
     SContainerMerchant(EntityPlayer customer, SMerchant merchant) throws Exception {
         super(customer.inventory, merchant, customer.world);
         this.merchant = merchant;
-
-        // Search the field
-        if (fieldInventoryMerchant == null) {
-            for (Field field : ContainerMerchant.class.getDeclaredFields()) {
-                field.setAccessible(true);
-                if (field.getType().isAssignableFrom(InventoryMerchant.class)) {
-                    fieldInventoryMerchant = field;
-                    fieldInventoryMerchant.setAccessible(true);
-                }
-            }
-        }
+        this.customer = customer;
 
         final SInventoryMerchant inventory = new SInventoryMerchant(customer, merchant);
+        this.inventory = inventory;
 
         setSlot(0, new Slot(inventory, 0, 36, 53));
         setSlot(1, new Slot(inventory, 1, 62, 53));
         setSlot(2, new SSlotMerchantResult(customer, merchant, inventory, 2, 120, 53));
 
-        fieldInventoryMerchant.set(this, inventory);
-
-        final SCraftInventoryMerchant craftInventory = new SCraftInventoryMerchant(inventory);
-        inventory.setCraftInventory(craftInventory);
+        SFieldAccessors.setInventoryMerchant(this, inventory);
+    }
 
-        this.bukkitEntity = new CraftInventoryView(customer.getBukkitEntity(), craftInventory, this);
+    SInventoryMerchant getMerchantInventory() {
+        return this.inventory;
     }
 
     /**
@@ -86,6 +73,9 @@ public class SContainerMerchant extends ContainerMerchant {
 
     @Override
     public CraftInventoryView getBukkitView() {
+        if (this.bukkitEntity == null) {
+            this.bukkitEntity = new CraftInventoryView(this.customer.getBukkitEntity(), this.inventory.getCraftInventory(), this);
+        }
         return this.bukkitEntity;
     }
 
@@ -0,0 +1,57 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.v110r1;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import me.cybermaxke.merchants.common.ItemCodec;
+
+import net.minecraft.server.v1_11_R1.ItemStack;
+import net.minecraft.server.v1_11_R1.NBTCompressedStreamTools;
+import net.minecraft.server.v1_11_R1.NBTReadLimiter;
+import net.minecraft.server.v1_11_R1.NBTTagCompound;
+
+import org.bukkit.craftbukkit.v1_11_R1.inventory.CraftItemStack;
+
+/**
+ * Encodes the items as their uncompressed nbt data, the
+ * snapshot streams are compressed as a whole if needed.
+ */
+public class SItemCodec implements ItemCodec {
+
+    @Override
+    public void write(DataOutput out, org.bukkit.inventory.ItemStack itemStack) throws IOException {
+        final NBTTagCompound tag = new NBTTagCompound();
+        CraftItemStack.asNMSCopy(itemStack).save(tag);
+        NBTCompressedStreamTools.a(tag, out);
+    }
+
+    @Override
+    public org.bukkit.inventory.ItemStack read(DataInput in) throws IOException {
+        final NBTTagCompound tag = NBTCompressedStreamTools.a(in, NBTReadLimiter.a);
+        final ItemStack itemStack = new ItemStack(tag);
+        if (itemStack == null) {
+            throw new IOException("Invalid item data: " + tag);
+        }
+        return CraftItemStack.asCraftMirror(itemStack);
+    }
+
+}
@@ -21,24 +21,120 @@ package me.cybermaxke.merchants.v110r1;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
+
 import me.cybermaxke.merchants.api.Merchant;
 import me.cybermaxke.merchants.api.MerchantAPI;
 import me.cybermaxke.merchants.api.MerchantOffer;
+import me.cybermaxke.merchants.api.MerchantPersistence;
+import me.cybermaxke.merchants.api.MerchantRegistry;
+import me.cybermaxke.merchants.api.MerchantSnapshot;
+import me.cybermaxke.merchants.api.MerchantTemplate;
+import me.cybermaxke.merchants.api.MerchantTradeBatchListener;
+import me.cybermaxke.merchants.api.MerchantTradeJournal;
+import me.cybermaxke.merchants.common.ConcurrentMerchantRegistry;
+import me.cybermaxke.merchants.common.MappedTradeJournal;
+import me.cybermaxke.merchants.common.MerchantCustomerIndex;
+import me.cybermaxke.merchants.common.MerchantMutationQueue;
+import me.cybermaxke.merchants.common.MerchantPayloadCache;
+import me.cybermaxke.merchants.common.MerchantTradeBatcher;
+import me.cybermaxke.merchants.common.MerchantTradeDispatcher;
+import me.cybermaxke.merchants.common.MerchantUpdateScheduler;
 
 import org.bukkit.inventory.ItemStack;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
 public class SMerchantAPI implements MerchantAPI {
 
+    // The scheduler that sends the merchant updates once per tick
+    private final MerchantUpdateScheduler updateScheduler;
+
+    // The encoded offer lists that are shared between the merchants
+    private final MerchantPayloadCache payloadCache = new MerchantPayloadCache();
+
+    // The dispatcher of the trades to the async listeners
+    private final MerchantTradeDispatcher tradeDispatcher;
+
+    // The collector of the trades for the batch listeners
+    private final MerchantTradeBatcher tradeBatcher;
+
+    // The mutations of the merchants that are requested by other threads
+    private final MerchantMutationQueue mutationQueue;
+
+    // The journal of all the trades, or null if disabled
+    @Nullable private final MappedTradeJournal tradeJournal;
+
+    // The codec of the items in the snapshots and evicted merchants
+    private final SItemCodec itemCodec = new SItemCodec();
+
+    // The executor of the work that can be done off the main thread
+    private final ListeningExecutorService workers;
+
+    // The executor of the work that has to be done on the main thread
+    private final Executor mainThread;
+
+    // The persistence that encodes and decodes the merchants on the workers
+    private final SMerchantPersistence persistence;
+
+    // The merchants that the players opened by the unique ids of the players
+    private final MerchantCustomerIndex customerIndex = new MerchantCustomerIndex();
+
+    // The merchants that are registered by their unique ids
+    private final ConcurrentMerchantRegistry registry = new ConcurrentMerchantRegistry(this);
+
+    SMerchantAPI(MerchantTradeDispatcher tradeDispatcher, MerchantTradeBatcher tradeBatcher, MerchantMutationQueue mutationQueue,
+            MerchantUpdateScheduler updateScheduler, @Nullable MappedTradeJournal tradeJournal, ListeningExecutorService workers,
+            Executor mainThread) {
+        this.tradeDispatcher = tradeDispatcher;
+        this.tradeBatcher = tradeBatcher;
+        this.mutationQueue = mutationQueue;
+        this.updateScheduler = updateScheduler;
+        this.tradeJournal = tradeJournal;
+        this.workers = workers;
+        this.mainThread = mainThread;
+        this.persistence = new SMerchantPersistence(this, this.itemCodec, workers, mainThread);
+    }
+
     @Override
     public Merchant newMerchant(String title) {
         checkNotNull(title, "title");
-        return new SMerchant(title, false);
+        return new SMerchant(this, title, false);
     }
 
     @Override
     public Merchant newMerchant(String title, boolean jsonTitle) {
         checkNotNull(title, "title");
-        return new SMerchant(title, jsonTitle);
+        return new SMerchant(this, title, jsonTitle);
+    }
+
+    @Override
+    public Merchant newMerchant(UUID uniqueId, String title, boolean jsonTitle) {
+        checkNotNull(uniqueId, "uniqueId");
+        checkNotNull(title, "title");
+        return new SMerchant(this, uniqueId, title, jsonTitle);
+    }
+
+    @Override
+    public MerchantTemplate newTemplate(String title, Iterable<MerchantOffer> offers) {
+        return this.newTemplate(title, false, offers);
+    }
+
+    @Override
+    public MerchantTemplate newTemplate(String title, boolean jsonTitle, Iterable<MerchantOffer> offers) {
+        checkNotNull(title, "title");
+        checkNotNull(offers, "offers");
+        return new SMerchantTemplate(this, title, jsonTitle, offers);
     }
 
     @SuppressWarnings("deprecation")
@@ -57,4 +153,111 @@ public class SMerchantAPI implements MerchantAPI {
         return this.newOffer(result, item1, null);
     }
 
+    @Override
+    public ListenableFuture<List<MerchantOffer>> newOffersAsync(Iterable<MerchantSnapshot.Offer> offers) {
+        checkNotNull(offers, "offers");
+        final List<MerchantSnapshot.Offer> offers0 = ImmutableList.copyOf(offers);
+
+        return this.workers.submit(new Callable<List<MerchantOffer>>() {
+
+            @Override
+            public List<MerchantOffer> call() throws Exception {
+                final List<MerchantOffer> result = Lists.newArrayListWithCapacity(offers0.size());
+                for (MerchantSnapshot.Offer offer : offers0) {
+                    // The offer isn't linked to a merchant yet, so it can be modified here,
+                    // the items are converted to nms items when the offer is constructed
+                    final SMerchantOffer offer0 = (SMerchantOffer) newOffer(offer.getResultItem(), offer.getFirstItem(),
+                            offer.getSecondItem().orNull());
+                    offer0.setMaxUses(offer.getMaxUses());
+                    offer0.setUses(offer.getUses());
+                    offer0.setCustomerUses(offer.hasCustomerUses());
+                    result.add(offer0);
+                }
+                return result;
+            }
+
+        });
+    }
+
+    @Override
+    public boolean addBatchListener(MerchantTradeBatchListener listener) {
+        return this.tradeBatcher.getGlobalChannel().addListener(listener);
+    }
+
+    @Override
+    public boolean removeBatchListener(MerchantTradeBatchListener listener) {
+        return this.tradeBatcher.getGlobalChannel().removeListener(listener);
+    }
+
+    @Override
+    public Collection<MerchantTradeBatchListener> getBatchListeners() {
+        return this.tradeBatcher.getGlobalChannel().getListeners();
+    }
+
+    @Override
+    public Optional<MerchantTradeJournal> getTradeJournal() {
+        return Optional.<MerchantTradeJournal>fromNullable(this.tradeJournal);
+    }
+
+    @Override
+    public MerchantPersistence getPersistence() {
+        return this.persistence;
+    }
+
+    @Override
+    public MerchantRegistry getRegistry() {
+        return this.registry;
+    }
+
+    @Override
+    public int getQueuedTrades() {
+        return this.tradeDispatcher.getQueueDepth();
+    }
+
+    @Override
+    public long getDroppedTrades() {
+        return this.tradeDispatcher.getDropped();
+    }
+
+    MerchantUpdateScheduler getUpdateScheduler() {
+        return this.updateScheduler;
+    }
+
+    MerchantPayloadCache getPayloadCache() {
+        return this.payloadCache;
+    }
+
+    MerchantTradeDispatcher getTradeDispatcher() {
+        return this.tradeDispatcher;
+    }
+
+    MerchantTradeBatcher getTradeBatcher() {
+        return this.tradeBatcher;
+    }
+
+    MerchantMutationQueue getMutationQueue() {
+        return this.mutationQueue;
+    }
+
+    MerchantCustomerIndex getCustomerIndex() {
+        return this.customerIndex;
+    }
+
+    @Nullable
+    MappedTradeJournal getMappedTradeJournal() {
+        return this.tradeJournal;
+    }
+
+    SItemCodec getItemCodec() {
+        return this.itemCodec;
+    }
+
+    ListeningExecutorService getWorkers() {
+        return this.workers;
+    }
+
+    Executor getMainThread() {
+        return this.mainThread;
+    }
+
 }
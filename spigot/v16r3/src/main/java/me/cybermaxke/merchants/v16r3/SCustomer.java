@@ -0,0 +1,45 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.v16r3;
+
+import org.bukkit.entity.Player;
+
+import net.minecraft.server.v1_6_R3.PlayerConnection;
+
+/**
+ * The window of a merchant that is opened for a customer, only used on the
+ * main thread. The window id is the one of the merchant window, even if the
+ * customer opened another window since.
+ */
+final class SCustomer {
+
+    final Player player;
+    final int entityId;
+    final PlayerConnection connection;
+    final SContainerMerchant container;
+    final int windowId;
+
+    SCustomer(Player player, PlayerConnection connection, SContainerMerchant container, int windowId) {
+        this.player = player;
+        this.entityId = player.getEntityId();
+        this.connection = connection;
+        this.container = container;
+        this.windowId = windowId;
+    }
+}
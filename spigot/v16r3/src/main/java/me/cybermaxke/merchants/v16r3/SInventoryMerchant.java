@@ -21,6 +21,9 @@ package me.cybermaxke.merchants.v16r3;
 import net.minecraft.server.v1_6_R3.EntityHuman;
 import net.minecraft.server.v1_6_R3.EntityPlayer;
 import net.minecraft.server.v1_6_R3.InventoryMerchant;
+import net.minecraft.server.v1_6_R3.ItemStack;
+
+import java.util.UUID;
 
 import org.bukkit.entity.Player;
 
@@ -28,6 +31,10 @@ public class SInventoryMerchant extends InventoryMerchant {
 
     final SMerchant merchant;
     private final EntityPlayer customer;
+    private final UUID customerId;
+
+    // The bukkit objects are only created once they are requested
+    private SCraftInventoryMerchant craftInventory;
     private SMerchantSession session;
 
     // The current index of the inventory.
@@ -36,6 +43,7 @@ public class SInventoryMerchant extends InventoryMerchant {
     SInventoryMerchant(EntityPlayer customer, SMerchant merchant) {
         super(customer, merchant);
         this.customer = customer;
+        this.customerId = customer.getBukkitEntity().getUniqueId();
         this.merchant = merchant;
     }
 
@@ -46,20 +54,57 @@ public class SInventoryMerchant extends InventoryMerchant {
 
     @Override
     public void c(int i) {
-        super.c(i);
+        // The recipe is updated for the customer
+        final UUID previous = SMerchantOffer.setStockContext(this.customerId);
+        final SMerchant previousMerchant = SMerchantOffer.setUsesContext(this.merchant);
+        try {
+            super.c(i);
+        } finally {
+            SMerchantOffer.setStockContext(previous);
+            SMerchantOffer.setUsesContext(previousMerchant);
+        }
 
         // Catch the current index
         this.currentIndex = i;
     }
 
-    void setCraftInventory(SCraftInventoryMerchant craftInventory) {
-        this.session = new SMerchantSession(this.merchant, craftInventory, this.customer.getBukkitEntity());
+    @Override
+    public void setItem(int index, ItemStack itemStack) {
+        // Changing the input items will search the recipe for the
+        // customer, which checks whether the recipe is locked
+        final UUID previous = SMerchantOffer.setStockContext(this.customerId);
+        final SMerchant previousMerchant = SMerchantOffer.setUsesContext(this.merchant);
+        try {
+            super.setItem(index, itemStack);
+        } finally {
+            SMerchantOffer.setStockContext(previous);
+            SMerchantOffer.setUsesContext(previousMerchant);
+        }
+    }
+
+    @Override
+    public ItemStack splitStack(int index, int amount) {
+        final UUID previous = SMerchantOffer.setStockContext(this.customerId);
+        final SMerchant previousMerchant = SMerchantOffer.setUsesContext(this.merchant);
+        try {
+            return super.splitStack(index, amount);
+        } finally {
+            SMerchantOffer.setStockContext(previous);
+            SMerchantOffer.setUsesContext(previousMerchant);
+        }
+    }
+
+    SCraftInventoryMerchant getCraftInventory() {
+        if (this.craftInventory == null) {
+            this.craftInventory = new SCraftInventoryMerchant(this);
+        }
+        return this.craftInventory;
     }
 
     @Override
     public SMerchantSession getOwner() {
         if (this.session == null) {
-            throw new IllegalStateException("The session is not initialized yet.");
+            this.session = new SMerchantSession(this.merchant, this.getCraftInventory(), this.customer.getBukkitEntity());
         }
         return this.session;
     }
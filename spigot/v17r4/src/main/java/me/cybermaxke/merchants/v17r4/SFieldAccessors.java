@@ -0,0 +1,116 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.v17r4;
+
+import java.lang.reflect.Field;
+
+import net.minecraft.server.v1_7_R4.ContainerMerchant;
+import net.minecraft.server.v1_7_R4.InventoryMerchant;
+import net.minecraft.server.v1_7_R4.MerchantRecipe;
+
+/**
+ * The accessors of the nms fields that aren't accessible. The fields are
+ * resolved once when the plugin is enabled, instead of every time they
+ * are used.
+ */
+final class SFieldAccessors {
+
+    // The field of the merchant inventory in the container
+    private static Field fieldInventoryMerchant;
+
+    // The fields of the uses of a recipe, made public by some spigot builds
+    private static Field fieldUses;
+    private static Field fieldMaxUses;
+
+    /**
+     * Resolves the fields.
+     *
+     * @throws IllegalStateException If one of the fields is missing
+     */
+    static void init() {
+        for (Field field : ContainerMerchant.class.getDeclaredFields()) {
+            if (field.getType().isAssignableFrom(InventoryMerchant.class)) {
+                fieldInventoryMerchant = makeAccessible(field);
+            }
+        }
+        if (fieldInventoryMerchant == null) {
+            throw new IllegalStateException("missing the merchant inventory field of " + ContainerMerchant.class.getName());
+        }
+        try {
+            fieldUses = makeAccessible(MerchantRecipe.class.getDeclaredField("uses"));
+            fieldMaxUses = makeAccessible(MerchantRecipe.class.getDeclaredField("maxUses"));
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("missing the uses fields of " + MerchantRecipe.class.getName(), e);
+        }
+    }
+
+    private static Field makeAccessible(Field field) {
+        field.setAccessible(true);
+        return field;
+    }
+
+    /**
+     * Sets the merchant inventory of the container.
+     *
+     * @param container The container
+     * @param inventory The merchant inventory
+     */
+    static void setInventoryMerchant(ContainerMerchant container, InventoryMerchant inventory) {
+        try {
+            fieldInventoryMerchant.set(container, inventory);
+        } catch (IllegalAccessException e) {
+            // The field is accessible
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sets the uses of the recipe.
+     *
+     * @param recipe The recipe
+     * @param uses The uses
+     */
+    static void setUses(MerchantRecipe recipe, int uses) {
+        try {
+            fieldUses.setInt(recipe, uses);
+        } catch (IllegalAccessException e) {
+            // The field is accessible
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sets the maximum uses of the recipe.
+     *
+     * @param recipe The recipe
+     * @param maxUses The maximum uses
+     */
+    static void setMaxUses(MerchantRecipe recipe, int maxUses) {
+        try {
+            fieldMaxUses.setInt(recipe, maxUses);
+        } catch (IllegalAccessException e) {
+            // The field is accessible
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private SFieldAccessors() {
+    }
+
+}
@@ -18,26 +18,53 @@
  */
 package me.cybermaxke.merchants.v17r4;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static me.cybermaxke.merchants.v17r4.SMerchantAPI.SPIGOT;
 
 import com.google.common.base.Function;
-import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import net.minecraft.util.io.netty.buffer.ByteBuf;
+import net.minecraft.util.io.netty.buffer.PooledByteBufAllocator;
 import net.minecraft.util.io.netty.buffer.Unpooled;
 import org.json.simple.parser.ParseException;
 
+import me.cybermaxke.merchants.api.AsyncMerchantTradeListener;
 import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantEditor;
 import me.cybermaxke.merchants.api.MerchantOffer;
+import me.cybermaxke.merchants.api.MerchantSnapshot;
+import me.cybermaxke.merchants.api.MerchantTradeBatchListener;
+import me.cybermaxke.merchants.api.MerchantTradeEvent;
 import me.cybermaxke.merchants.api.MerchantTradeListener;
-
+import me.cybermaxke.merchants.common.AbstractMerchantEditor;
+import me.cybermaxke.merchants.common.EvictableMerchant;
+import me.cybermaxke.merchants.common.InstrumentedMerchant;
+import me.cybermaxke.merchants.common.IntObjectMap;
+import me.cybermaxke.merchants.common.MappedTradeJournal;
+import me.cybermaxke.merchants.common.MerchantLatencyHistogram;
+import me.cybermaxke.merchants.common.MerchantPayloadCache;
+import me.cybermaxke.merchants.common.MerchantSnapshotReader;
+import me.cybermaxke.merchants.common.MerchantSnapshotWriter;
+import me.cybermaxke.merchants.common.MerchantTradeBatcher;
+import me.cybermaxke.merchants.common.ReapableMerchant;
+
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryOpenEvent;
+import org.bukkit.inventory.InventoryView;
 
 import org.bukkit.craftbukkit.v1_7_R4.entity.CraftPlayer;
 import org.bukkit.craftbukkit.v1_7_R4.event.CraftEventFactory;
+import org.bukkit.craftbukkit.v1_7_R4.inventory.CraftInventory;
 
-import net.minecraft.server.v1_7_R4.Container;
 import net.minecraft.server.v1_7_R4.EntityHuman;
 import net.minecraft.server.v1_7_R4.EntityPlayer;
 import net.minecraft.server.v1_7_R4.IMerchant;
@@ -48,36 +75,243 @@ import net.minecraft.server.v1_7_R4.PacketDataSerializer;
 import net.minecraft.server.v1_7_R4.PacketPlayOutCustomPayload;
 import net.minecraft.server.v1_7_R4.PacketPlayOutOpenWindow;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("unchecked")
-public class SMerchant implements IMerchant, Merchant {
+public class SMerchant implements IMerchant, Merchant, EvictableMerchant, InstrumentedMerchant, ReapableMerchant {
+
+    // The protocol versions that the offers are encoded for, the offers
+    // are encoded the same for the versions up to the next one
+    private static final int[] PROTOCOLS = SPIGOT ? new int[] { 27, 28, 29, 47 } : new int[] { -1 };
+
+    // The api that created this merchant
+    private final SMerchantAPI api;
+
+    // The unique id of the merchant
+    private final UUID uniqueId;
+
+    // The recipes list, or null if the offers are evicted or the template isn't linked yet
+    private SMerchantRecipeList offers = new SMerchantRecipeList();
+
+    // The offers as immutable list, replaced every time the offers change
+    // so they can be read from any thread, or null if the offers are evicted
+    // or the template isn't linked yet
+    private volatile List<MerchantOffer> offersView = ImmutableList.of();
+
+    // The evicted offers, or null if the offers aren't evicted
+    private volatile EvictedOffers evicted;
 
-    // The recipes list
-    private final MerchantRecipeList offers = new MerchantRecipeList();
+    // The time that the offers or customers were last accessed
+    private volatile long lastAccess = System.currentTimeMillis();
 
-    // The customers
-    private final Set<Player> customers = Sets.newHashSet();
+    // The latencies of the opened windows, created on the first open
+    private volatile MerchantLatencyHistogram openLatency;
+
+    // The merchant of the template whose offers are shared with
+    // this merchant, until offers are added, removed or moved
+    private volatile SMerchant template;
+
+    // The replacements of the offers of the template in this merchant, keyed
+    // by the offer of the template, or null if no offers are replaced
+    private Map<SMerchantOffer, SMerchantOffer> replacedOffers;
+
+    // The uses of the offers that are counted by this merchant instead of the
+    // offers, the merchants of a template count them for the template offers
+    private volatile Map<SMerchantOffer, Integer> ownUses;
+
+    // The merchants that share the offers of this merchant, only
+    // present if this merchant is the merchant of a template
+    private Set<SMerchant> derived;
+
+    // The customers, they can be read from any thread
+    private final Set<Player> customers = Collections.newSetFromMap(new ConcurrentHashMap<Player, Boolean>());
+
+    // The windows of the customers by their entity id, grouped by the index
+    // of their protocol version, only used on the main thread
+    private final IntObjectMap<SCustomer>[] windowsByProtocol = createProtocolGroups();
 
     // The title of the merchant
-    private String title;
-    private boolean jsonTitle;
+    private volatile String title;
+    private volatile boolean jsonTitle;
 
     // The title that will be send
     private String sendTitle;
 
-    // The trade handlers
-    final Set<MerchantTradeListener> handlers = Sets.newHashSet();
+    // The version of the offer list, increased every time it changes
+    private int offersVersion;
+
+    // The encoded offer lists by the index of the protocol version they
+    // were encoded for and the version of the offer list
+    private final byte[][] payloads = new byte[PROTOCOLS.length][];
+    private int payloadsVersion;
+
+    // The minimal capacity of the pooled buffer that the offers are encoded into
+    private static final int MIN_PAYLOAD_CAPACITY = 256;
+
+    // The size of the last encoded offer list
+    private int payloadSize;
+
+    // Whether the updates should be send immediately
+    private boolean immediateUpdates;
+
+    // The task that sends the pending update
+    private final Runnable updateTask = new Runnable() {
+
+        @Override
+        public void run() {
+            sendUpdateNow();
+        }
+
+    };
+
+    // The trade handlers, copied on write so they can be changed from any thread
+    final Set<MerchantTradeListener> handlers = new CopyOnWriteArraySet<MerchantTradeListener>();
+    final Set<AsyncMerchantTradeListener> asyncHandlers = new CopyOnWriteArraySet<AsyncMerchantTradeListener>();
+    final MerchantTradeBatcher.Channel batchChannel = new MerchantTradeBatcher.Channel();
 
     // Internal use only
     SMerchantOffer onTrade;
 
-    SMerchant(String title, boolean jsonTitle) {
-        this.setTitle(title, jsonTitle);
+    SMerchant(SMerchantAPI api, String title, boolean jsonTitle) {
+        this(api, UUID.randomUUID(), title, jsonTitle);
+    }
+
+    SMerchant(SMerchantAPI api, UUID uniqueId, String title, boolean jsonTitle) {
+        this.api = api;
+        this.uniqueId = uniqueId;
+        checkNotNull(title, "title");
+        this.applyTitle(title, jsonTitle);
+    }
+
+    SMerchant(SMerchantAPI api, String title, boolean jsonTitle, SMerchant template) {
+        this(api, title, jsonTitle);
+
+        // Share the offers of the template, the template can only be linked on the
+        // main thread, until then the offers are read through the template
+        this.offers = null;
+        this.offersView = null;
+        this.template = template;
+        if (Bukkit.isPrimaryThread()) {
+            this.linkTemplate();
+        }
+    }
+
+    // Links this merchant to the offers of the template, the merchant
+    // of the template is linked to the offers instead.
+    private void linkTemplate() {
+        final SMerchant template = this.template;
+        if (template.derived == null) {
+            template.derived = Collections.newSetFromMap(new WeakHashMap<SMerchant, Boolean>());
+        }
+        template.derived.add(this);
+        template.loadOffers();
+
+        this.resolveOffers();
+    }
+
+    // Resolves the replaced offers over the offers of the template, the resolved
+    // list only exists for merchants that replace offers of the template.
+    private void resolveOffers() {
+        final SMerchant template = this.template;
+        if (this.replacedOffers == null) {
+            this.offers = template.offers;
+            this.offersView = template.offersView;
+            return;
+        }
+
+        final SMerchantRecipeList offers = new SMerchantRecipeList();
+        for (Object recipe : template.offers) {
+            final SMerchantOffer replacement = this.replacedOffers.get(recipe);
+            offers.add(replacement != null ? replacement : recipe);
+        }
+        this.offers = offers;
+        this.publishOffers();
+    }
+
+    // Replaces the offer of the template at the index, the offers of the
+    // template are never linked to this merchant, only the replacements.
+    private SMerchantOffer replaceOffer(int index, SMerchantOffer offer) {
+        final SMerchantOffer original = (SMerchantOffer) this.template.offers.get(index);
+        final SMerchantOffer old = (SMerchantOffer) this.offers.get(index);
+
+        if (offer == original) {
+            if (this.replacedOffers != null) {
+                this.replacedOffers.remove(original);
+                if (this.replacedOffers.isEmpty()) {
+                    this.replacedOffers = null;
+                }
+            }
+        } else {
+            if (this.replacedOffers == null) {
+                this.replacedOffers = Maps.newHashMap();
+            }
+            this.replacedOffers.put(original, offer);
+            offer.add(this);
+        }
+
+        // The old offer may still replace another offer
+        if (old != original && !this.isReplacement(old)) {
+            old.remove(this);
+        }
+
+        this.resolveOffers();
+        return old;
+    }
+
+    // Gets whether the offer replaces a offer of the template in this merchant.
+    private boolean isReplacement(SMerchantOffer offer) {
+        return this.replacedOffers != null && this.replacedOffers.containsValue(offer);
+    }
+
+    // Unlinks this merchant from the template, the offers of
+    // the template keep the uses that this merchant counted.
+    private void unlinkTemplate() {
+        for (Object recipe : this.offers) {
+            final SMerchantOffer offer = (SMerchantOffer) recipe;
+            if (!this.isReplacement(offer) && (this.ownUses == null || !this.ownUses.containsKey(offer))) {
+                this.setOwnUses(offer, offer.getUses());
+            }
+        }
+
+        this.template.derived.remove(this);
+        this.template = null;
+        this.replacedOffers = null;
+    }
+
+    // Copies the offers of the template, before offers are added, removed or moved.
+    private void detachOffers() {
+        if (this.template == null) {
+            return;
+        }
+
+        this.unlinkTemplate();
+
+        final SMerchantRecipeList offers = new SMerchantRecipeList();
+        for (Object recipe : this.offers) {
+            offers.add(recipe);
+            ((SMerchantOffer) recipe).add(this);
+        }
+        this.offers = offers;
+    }
+
+    @Override
+    public UUID getUniqueId() {
+        return this.uniqueId;
     }
 
     @Override
@@ -91,11 +325,32 @@ public class SMerchant implements IMerchant, Merchant {
     }
 
     @Override
-    public void setTitle(String title, boolean jsonTitle) {
+    public void setTitle(final String title, final boolean jsonTitle) {
         checkNotNull(title, "title");
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    setTitle(title, jsonTitle);
+                }
+
+            });
+            return;
+        }
 
         // The old title
         final String oldTitle = this.sendTitle;
+        this.applyTitle(title, jsonTitle);
+
+        // Send a update
+        if (!this.sendTitle.equals(oldTitle)) {
+            sendTitleUpdate();
+        }
+    }
+
+    // Converts and sets the title, without sending it to the customers.
+    private void applyTitle(String title, boolean jsonTitle) {
         final String newTitle;
 
         if (jsonTitle) {
@@ -115,11 +370,6 @@ public class SMerchant implements IMerchant, Merchant {
         this.sendTitle = newTitle;
         this.jsonTitle = jsonTitle;
         this.title = title;
-
-        // Send a update
-        if (!this.sendTitle.equals(oldTitle)) {
-            sendTitleUpdate();
-        }
     }
 
     @Override
@@ -144,55 +394,292 @@ public class SMerchant implements IMerchant, Merchant {
         return Lists.newArrayList(this.handlers);
     }
 
+    @Override
+    public boolean addAsyncListener(AsyncMerchantTradeListener listener) {
+        checkNotNull(listener, "listener");
+        return this.asyncHandlers.add(listener);
+    }
+
+    @Override
+    public boolean removeAsyncListener(AsyncMerchantTradeListener listener) {
+        checkNotNull(listener, "listener");
+        return this.asyncHandlers.remove(listener);
+    }
+
+    @Override
+    public Collection<AsyncMerchantTradeListener> getAsyncListeners() {
+        return Lists.newArrayList(this.asyncHandlers);
+    }
+
+    @Override
+    public boolean addBatchListener(MerchantTradeBatchListener listener) {
+        return this.batchChannel.addListener(listener);
+    }
+
+    @Override
+    public boolean removeBatchListener(MerchantTradeBatchListener listener) {
+        return this.batchChannel.removeListener(listener);
+    }
+
+    @Override
+    public Collection<MerchantTradeBatchListener> getBatchListeners() {
+        return this.batchChannel.getListeners();
+    }
+
+    // Writes the trade to the journal, if enabled, the offer was matched
+    // by the recipe list before the trade so its index is known
+    void addJournalTrade(SMerchantOffer offer, UUID customerId) {
+        final MappedTradeJournal journal = this.api.getMappedTradeJournal();
+        if (journal != null) {
+            journal.append(this.uniqueId, this.offers.indexOfMatched(offer), customerId, offer.getResultAmount());
+        }
+    }
+
+    // Records the trade for the batch listeners
+    void addBatchTrade(SMerchantOffer offer, Player customer) {
+        this.api.getTradeBatcher().add(this.batchChannel, this, offer, customer);
+    }
+
+    // Passes the trade to the async listeners
+    void dispatchAsyncTrade(SMerchantOffer offer, UUID customerId) {
+        // Take a snapshot of the offer, it may be changed before the event is handled
+        final int uses = offer.hasCustomerUses() ? offer.getUses(customerId) : this.getUses(offer);
+        final MerchantTradeEvent event = new MerchantTradeEvent(this, offer.snapshot(uses), customerId, System.currentTimeMillis());
+        this.api.getTradeDispatcher().dispatch(event, this.asyncHandlers);
+    }
+
+    // Restores the evicted offers and marks the merchant as accessed.
+    private void loadOffers() {
+        this.lastAccess = System.currentTimeMillis();
+
+        // Link the template if the merchant was created on another thread
+        if (this.template != null && this.offers == null) {
+            this.linkTemplate();
+            return;
+        }
+
+        final EvictedOffers evicted = this.evicted;
+        if (evicted == null) {
+            return;
+        }
+
+        final SMerchantRecipeList offers = new SMerchantRecipeList();
+        for (SMerchantOffer offer : evicted.restore(this.api.getItemCodec())) {
+            offers.add(offer);
+            offer.add(this);
+        }
+
+        // Publish the offers before the evicted offers are
+        // cleared, the readers on other threads depend on it
+        this.offers = offers;
+        this.publishOffers();
+        this.evicted = null;
+        this.invalidateOffers();
+    }
+
+    // Publishes the offers for the readers on other threads.
+    private void publishOffers() {
+        final ImmutableList.Builder<MerchantOffer> builder = ImmutableList.builder();
+        for (Object recipe : this.offers) {
+            builder.add((MerchantOffer) recipe);
+        }
+        final List<MerchantOffer> view = builder.build();
+        this.offersView = view;
+
+        // The merchants that share the offers resolve them again
+        if (this.derived != null) {
+            for (SMerchant merchant : this.derived) {
+                merchant.resolveOffers();
+            }
+        }
+    }
+
+    // Gets the offers, the evicted offers are only restored on the main thread.
+    private List<? extends MerchantOffer> getOffersView() {
+        if (Bukkit.isPrimaryThread()) {
+            this.loadOffers();
+            return this.offersView;
+        }
+
+        this.lastAccess = System.currentTimeMillis();
+        while (true) {
+            final List<MerchantOffer> view = this.offersView;
+            if (view != null) {
+                return view;
+            }
+            // The template isn't linked yet
+            final SMerchant template = this.template;
+            if (template != null) {
+                return template.getOffersView();
+            }
+            // The offers that were collected are copies, changes to them won't affect this merchant
+            final EvictedOffers evicted = this.evicted;
+            if (evicted != null) {
+                return evicted.restore(this.api.getItemCodec());
+            }
+        }
+    }
+
+    @Override
+    public boolean evict(long idleSince) {
+        // Shared offers cannot be restored from a snapshot, this includes
+        // the merchants whose template isn't linked yet
+        if (this.template != null || (this.derived != null && !this.derived.isEmpty())) {
+            return false;
+        }
+        if (this.offers == null || this.lastAccess > idleSince || !this.customers.isEmpty()) {
+            return false;
+        }
+        // The customer and own uses cannot be restored from a snapshot
+        if (this.offers.isEmpty() || this.hasCustomerUses() || this.hasOwnUses()) {
+            return false;
+        }
+
+        final byte[] record;
+        try {
+            record = MerchantSnapshotWriter.encode(MerchantSnapshot.of(this), this.api.getItemCodec());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        // Unlink the offers, so that they can be collected
+        final List<WeakReference<SMerchantOffer>> evictedOffers = Lists.newArrayListWithCapacity(this.offers.size());
+        for (Object recipe : this.offers) {
+            ((SMerchantOffer) recipe).remove(this);
+            evictedOffers.add(new WeakReference<SMerchantOffer>((SMerchantOffer) recipe));
+        }
+
+        // Set the evicted offers before the view is cleared,
+        // the readers on other threads depend on it
+        this.evicted = new EvictedOffers(record, evictedOffers);
+        this.offersView = null;
+        this.offers = null;
+        Arrays.fill(this.payloads, null);
+        return true;
+    }
+
+    @Override
+    public boolean isEvicted() {
+        return this.evicted != null;
+    }
+
+    @Override
+    public byte[] getEvictedRecord() {
+        final EvictedOffers evicted = this.evicted;
+        return evicted == null ? null : evicted.record;
+    }
+
     @Override
     public int getOffersCount() {
-        return this.offers.size();
+        return this.getOffersView().size();
     }
 
     @Override
     public MerchantOffer getOfferAt(int index) {
-        if (index < 0 || index >= this.offers.size()) {
-            throw new IndexOutOfBoundsException("index (" + index + ") out of bounds min (0) and max (" + this.offers.size() + ")");
+        final List<? extends MerchantOffer> offers = this.getOffersView();
+        if (index < 0 || index >= offers.size()) {
+            throw new IndexOutOfBoundsException("index (" + index + ") out of bounds min (0) and max (" + offers.size() + ")");
         }
 
-        return (MerchantOffer) this.offers.get(index);
+        return offers.get(index);
     }
 
     @Override
-    public void setOfferAt(int index, MerchantOffer offer) {
+    public void setOfferAt(final int index, final MerchantOffer offer) {
         checkNotNull(offer, "offer");
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    setOfferAt(index, offer);
+                }
+
+            });
+            return;
+        }
+        this.loadOffers();
 
         if (index < 0 || index >= this.offers.size()) {
             throw new IndexOutOfBoundsException("index (" + index + ") out of bounds min (0) and max (" + this.offers.size() + ")");
         }
 
-        final SMerchantOffer old = (SMerchantOffer) this.offers.set(index, offer);
-        old.remove(this);
+        // The merchants of a template only keep the replaced offers
+        final SMerchantOffer old;
+        if (this.template != null) {
+            old = this.replaceOffer(index, (SMerchantOffer) offer);
+        } else {
+            old = (SMerchantOffer) this.offers.set(index, offer);
+            old.remove(this);
+            ((SMerchantOffer) offer).add(this);
+            this.publishOffers();
+        }
+        if (old != offer) {
+            this.removeOwnUses(old);
+        }
 
         // Send the new offer list
+        this.invalidateOffers();
         sendUpdate();
     }
 
     @Override
-    public void insetOfferAt(int index, MerchantOffer offer) {
+    public void insetOfferAt(final int index, final MerchantOffer offer) {
         checkNotNull(offer, "offer");
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    insetOfferAt(index, offer);
+                }
+
+            });
+            return;
+        }
+        this.loadOffers();
 
         if (index < 0 || index >= this.offers.size()) {
             throw new IndexOutOfBoundsException("index (" + index + ") out of bounds min (0) and max (" + this.offers.size() + ")");
         }
 
+        this.detachOffers();
         this.offers.add(index, offer);
+        ((SMerchantOffer) offer).add(this);
+
+        // Send the new offer list
+        this.publishOffers();
+        this.invalidateOffers();
+        sendUpdate();
     }
 
     @Override
-    public void removeOffer(MerchantOffer offer) {
+    public void removeOffer(final MerchantOffer offer) {
         checkNotNull(offer, "offer");
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    removeOffer(offer);
+                }
+
+            });
+            return;
+        }
+        this.loadOffers();
+
+        this.detachOffers();
 
         if (this.offers.remove(offer)) {
             // Unlink the offer
             ((SMerchantOffer) offer).remove(this);
+            this.removeOwnUses(offer);
 
             // Send the new offer list
+            this.publishOffers();
+            this.invalidateOffers();
             sendUpdate();
         }
     }
@@ -200,50 +687,104 @@ public class SMerchant implements IMerchant, Merchant {
     @Override
     public void removeOffers(Iterable<MerchantOffer> offers) {
         checkNotNull(offers, "offers");
+        if (!Bukkit.isPrimaryThread()) {
+            // Copy the offers, they may be changed before the mutation is applied
+            final List<MerchantOffer> offers0 = ImmutableList.copyOf(offers);
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    removeOffers(offers0);
+                }
+
+            });
+            return;
+        }
+        this.loadOffers();
 
         // Only update if necessary
         if (!offers.iterator().hasNext()) {
             return;
         }
 
-        if (this.offers.removeAll(Lists.newArrayList(offers))) {
+        // Checking an identity set keeps the removal linear
+        final Set<MerchantOffer> removed = Sets.newIdentityHashSet();
+        Iterables.addAll(removed, offers);
+
+        this.detachOffers();
+
+        if (this.offers.removeAll(removed)) {
             // Unlink the offers
             for (MerchantOffer offer : offers) {
                 ((SMerchantOffer) offer).remove(this);
+                this.removeOwnUses(offer);
             }
 
             // Send the new offer list
+            this.publishOffers();
+            this.invalidateOffers();
             sendUpdate();
         }
     }
 
     @Override
-    public void addOffer(MerchantOffer offer) {
+    public void addOffer(final MerchantOffer offer) {
         checkNotNull(offer, "offer");
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    addOffer(offer);
+                }
+
+            });
+            return;
+        }
+        this.loadOffers();
 
         if (this.offers.contains(offer)) {
             return;
         }
 
         // Add the offer
+        this.detachOffers();
         this.offers.add(offer);
 
         // Link the offer
         ((SMerchantOffer) offer).add(this);
 
         // Send the new offer list
+        this.publishOffers();
+        this.invalidateOffers();
         sendUpdate();
     }
 
     @Override
     public void addOffers(Iterable<MerchantOffer> offers) {
         checkNotNull(offers, "offers");
+        if (!Bukkit.isPrimaryThread()) {
+            // Copy the offers, they may be changed before the mutation is applied
+            final List<MerchantOffer> offers0 = ImmutableList.copyOf(offers);
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    addOffers(offers0);
+                }
+
+            });
+            return;
+        }
+        this.loadOffers();
 
         // Only update if necessary
         if (!offers.iterator().hasNext()) {
             return;
         }
 
+        this.detachOffers();
+
         // Add and link the offers
         for (MerchantOffer offer : offers) {
             if (this.offers.contains(offer)) {
@@ -254,12 +795,52 @@ public class SMerchant implements IMerchant, Merchant {
         }
 
         // Send the new offer list
+        this.publishOffers();
+        this.invalidateOffers();
         sendUpdate();
     }
 
     @Override
-    public void sortOffers(Comparator<MerchantOffer> comparator) {
+    public ListenableFuture<Void> addOffersAsync(Iterable<MerchantOffer> offers) {
+        checkNotNull(offers, "offers");
+        final List<MerchantOffer> offers0 = ImmutableList.copyOf(offers);
+
+        // Only the protocol versions of the current customers are known
+        final Set<Integer> indices = Sets.newHashSet();
+        for (Player customer : this.customers) {
+            indices.add(getProtocolIndex(((CraftPlayer) customer).getHandle()));
+        }
+        if (!SPIGOT) {
+            indices.add(0);
+        }
+
+        return Futures.transform(this.preparePayloads(offers0, indices), new Function<List<PreparedPayload>, Void>() {
+
+            @Override
+            public Void apply(List<PreparedPayload> payloads) {
+                addOffers(offers0);
+                adoptPayloads(payloads);
+                return null;
+            }
+
+        }, this.api.getMainThread());
+    }
+
+    @Override
+    public void sortOffers(final Comparator<MerchantOffer> comparator) {
         checkNotNull(comparator, "comparator");
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    sortOffers(comparator);
+                }
+
+            });
+            return;
+        }
+        this.loadOffers();
 
         // Only sort if necessary
         if (this.offers.size() <= 1) {
@@ -267,28 +848,198 @@ public class SMerchant implements IMerchant, Merchant {
         }
 
         // Sort the offers
+        this.detachOffers();
         Collections.sort(this.offers, comparator);
 
         // Send the new offer list
+        this.publishOffers();
+        this.invalidateOffers();
         sendUpdate();
     }
 
+    @Override
+    public MerchantEditor edit() {
+        return new AbstractMerchantEditor(this) {
+
+            @Override
+            protected void setOffers(List<MerchantOffer> offers) {
+                SMerchant.this.setOffers(offers);
+            }
+
+        };
+    }
+
+    // Replaces all the offers, with a single update.
+    private void setOffers(final List<MerchantOffer> offers) {
+        for (MerchantOffer offer : offers) {
+            checkArgument(offer instanceof SMerchantOffer, "unsupported offer (" + offer + ")");
+        }
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    setOffers(offers);
+                }
+
+            });
+            return;
+        }
+        this.loadOffers();
+
+        if (this.template != null) {
+            // Only the replacements are linked to this merchant
+            if (this.replacedOffers != null) {
+                for (SMerchantOffer offer : this.replacedOffers.values()) {
+                    offer.remove(this);
+                }
+            }
+            this.unlinkTemplate();
+            this.offers = new SMerchantRecipeList();
+        } else {
+            // Unlink the old offers
+            for (Object recipe : this.offers) {
+                ((SMerchantOffer) recipe).remove(this);
+            }
+            this.offers.clear();
+        }
+
+        // Only the offers that stay keep their own uses
+        if (this.ownUses != null) {
+            final Set<MerchantOffer> retained = Sets.newIdentityHashSet();
+            retained.addAll(offers);
+            this.ownUses.keySet().retainAll(retained);
+        }
+
+        // Add and link the new offers
+        for (MerchantOffer offer : offers) {
+            this.offers.add((MerchantRecipe) offer);
+            ((SMerchantOffer) offer).add(this);
+        }
+
+        // Send the new offer list
+        this.publishOffers();
+        this.invalidateOffers();
+        this.sendUpdate();
+    }
+
     @Override
     public List<MerchantOffer> getOffers() {
-        return Lists.newArrayList(this.offers);
+        return Lists.<MerchantOffer>newArrayList(this.getOffersView());
+    }
+
+    @Override
+    public int getUses(MerchantOffer offer) {
+        checkNotNull(offer, "offer");
+        final Map<SMerchantOffer, Integer> ownUses = this.ownUses;
+        if (ownUses != null) {
+            final Integer uses = ownUses.get(offer);
+            if (uses != null) {
+                return uses;
+            }
+        }
+        return offer.getUses();
+    }
+
+    @Override
+    public void setUses(final MerchantOffer offer, final int uses) {
+        checkNotNull(offer, "offer");
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    setUses(offer, uses);
+                }
+
+            });
+            return;
+        }
+        this.loadOffers();
+        this.setOwnUses((SMerchantOffer) offer, uses);
+    }
+
+    // Sets the uses of the offer that are counted by this merchant.
+    private void setOwnUses(SMerchantOffer offer, int uses) {
+        final int uses0 = this.getUses(offer);
+        if (this.ownUses == null) {
+            this.ownUses = new ConcurrentHashMap<SMerchantOffer, Integer>();
+        }
+        this.ownUses.put(offer, uses);
+        if (uses0 == uses) {
+            return;
+        }
+
+        // The uses are encoded, so the offers need to encode again
+        this.invalidateOffers();
+        if (offer.isLocked(uses0) != offer.isLocked(uses)) {
+            this.sendUpdate();
+        }
+    }
+
+    /**
+     * Increases the uses of the offer if they are counted by this merchant,
+     * the merchants of a template count them for the template offers.
+     *
+     * @param offer The offer
+     * @param uses The extra uses
+     * @return Whether the uses are counted by this merchant
+     */
+    boolean addOwnUses(SMerchantOffer offer, int uses) {
+        if ((this.ownUses == null || !this.ownUses.containsKey(offer)) &&
+                (this.template == null || this.isReplacement(offer))) {
+            return false;
+        }
+        this.setOwnUses(offer, this.getUses(offer) + uses);
+        return true;
+    }
+
+    // Removes the uses of the offer, once it's removed from this merchant.
+    private void removeOwnUses(Object offer) {
+        if (this.ownUses != null) {
+            this.ownUses.remove(offer);
+        }
+    }
+
+    // Gets whether this merchant counts the uses of one of the offers.
+    private boolean hasOwnUses() {
+        final Map<SMerchantOffer, Integer> ownUses = this.ownUses;
+        return ownUses != null && !ownUses.isEmpty();
+    }
+
+    // Gets whether this merchant overrides the offers of the template.
+    private boolean hasOverrides() {
+        return this.replacedOffers != null || this.hasOwnUses();
     }
 
     @Override
-    public boolean addCustomer(Player player) {
+    public boolean addCustomer(final Player player) {
         checkNotNull(player, "player");
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    addCustomer(player);
+                }
+
+            });
+            return !this.customers.contains(player);
+        }
+        this.loadOffers();
+        return this.open(player);
+    }
+
+    // Opens the window for the player, the offers have to be loaded.
+    private boolean open(Player player) {
+        final long start = System.nanoTime();
 
         if (this.customers.add(player)) {
             final EntityPlayer player0 = ((CraftPlayer) player).getHandle();
-            Container container0 = null;
+            SContainerMerchant container0 = null;
 
             try {
-                container0 = new SContainerMerchant(player0, this);
-                container0 = CraftEventFactory.callInventoryOpenEvent(player0, container0);
+                container0 = openContainer(player0, new SContainerMerchant(player0, this));
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -307,20 +1058,19 @@ public class SMerchant implements IMerchant, Merchant {
             // Open the window
             player0.playerConnection.sendPacket(new PacketPlayOutOpenWindow(window, 6, this.sendTitle, 3, true));
 
-            // Write the recipe list
-            final PacketDataSerializer content;
-            // Create the proper packet serializer
-            if (SPIGOT) {
-                content = new PacketDataSerializer(Unpooled.buffer(), player0.playerConnection.networkManager.getVersion());
-            } else {
-                content = new PacketDataSerializer(Unpooled.buffer());
-            }
-            content.writeInt(window);
-            this.offers.a(content);
+            // Get the recipe list, encoded for the protocol of the player
+            final int index = getProtocolIndex(player0);
+            final ByteBuf payload = Unpooled.wrappedBuffer(this.getPayload(index, player));
+
+            // Track the window, the customer may open other windows later
+            final SCustomer customer = new SCustomer(player, player0.playerConnection, container0, window);
+            this.windowsByProtocol[index].put(player.getEntityId(), customer);
+            this.api.getCustomerIndex().put(player.getUniqueId(), this);
 
             // Send the offers
-            player0.playerConnection.sendPacket(new PacketPlayOutCustomPayload("MC|TrList", content));
+            player0.playerConnection.sendPacket(new PacketPlayOutCustomPayload("MC|TrList", createContent(customer, payload)));
 
+            this.recordOpenLatency(System.nanoTime() - start);
             return true;
         }
 
@@ -328,10 +1078,158 @@ public class SMerchant implements IMerchant, Merchant {
     }
 
     @Override
-    public boolean removeCustomer(Player player) {
+    public Set<Player> addCustomers(Collection<Player> players) {
+        checkNotNull(players, "players");
+        final List<Player> players0 = ImmutableList.copyOf(players);
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    addCustomers(players0);
+                }
+
+            });
+            final Set<Player> opened = Sets.newLinkedHashSet();
+            for (Player player : players0) {
+                if (!this.customers.contains(player)) {
+                    opened.add(player);
+                }
+            }
+            return opened;
+        }
+        this.loadOffers();
+
+        // Only the first window of every protocol encodes the
+        // offers, the other windows get the payload from the cache
+        final Set<Player> opened = Sets.newLinkedHashSet();
+        for (Player player : players0) {
+            if (this.open(player)) {
+                opened.add(player);
+            }
+        }
+        return opened;
+    }
+
+    @Override
+    public ListenableFuture<Set<Player>> addCustomers(Collection<Player> players, final int perTick) {
+        checkNotNull(players, "players");
+        checkArgument(perTick > 0, "perTick must be greater then 0");
+
+        final Iterator<Player> it = ImmutableList.copyOf(players).iterator();
+        final Set<Player> opened = Sets.newLinkedHashSet();
+        final SettableFuture<Set<Player>> future = SettableFuture.create();
+
+        final Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    loadOffers();
+                    for (int i = 0; i < perTick && it.hasNext(); i++) {
+                        final Player player = it.next();
+                        if (player.isOnline() && open(player)) {
+                            opened.add(player);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    future.setException(e);
+                    return;
+                }
+                if (it.hasNext()) {
+                    // Continue with the next players during the next tick
+                    api.getMainThread().execute(this);
+                } else {
+                    future.set(opened);
+                }
+            }
+
+        };
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            this.api.getMainThread().execute(task);
+        }
+        return future;
+    }
+
+    @Override
+    public ListenableFuture<Boolean> openAsync(final Player player) {
         checkNotNull(player, "player");
+        final int index = getProtocolIndex(((CraftPlayer) player).getHandle());
+
+        return Futures.transform(this.preparePayloads(ImmutableList.<MerchantOffer>of(), Collections.singleton(index)),
+                new Function<List<PreparedPayload>, Boolean>() {
+
+                    @Override
+                    public Boolean apply(List<PreparedPayload> payloads) {
+                        adoptPayloads(payloads);
+                        return addCustomer(player);
+                    }
+
+                }, this.api.getMainThread());
+    }
+
+    /**
+     * Calls the open event for the container, which creates the bukkit view
+     * of the container. The view isn't needed if nothing listens to the event
+     * and the customer doesn't have another window open, then the customer is
+     * only moved to the inventory of the container.
+     *
+     * @param player The customer
+     * @param container The container
+     * @return The container to open, or null if cancelled
+     */
+    private static SContainerMerchant openContainer(EntityPlayer player, SContainerMerchant container) {
+        if (InventoryOpenEvent.getHandlerList().getRegisteredListeners().length != 0
+                || player.activeContainer != player.defaultContainer) {
+            return CraftEventFactory.callInventoryOpenEvent(player, container) == null ? null : container;
+        }
+
+        // The same as Container#transferTo, without the view of the container
+        final CraftPlayer human = player.getBukkitEntity();
+        final InventoryView source = player.activeContainer.getBukkitView();
+        ((CraftInventory) source.getTopInventory()).getInventory().onClose(human);
+        ((CraftInventory) source.getBottomInventory()).getInventory().onClose(human);
+        container.getMerchantInventory().onOpen(human);
+        player.inventory.onOpen(human);
+
+        return container;
+    }
+
+    // Records the time it took to open the window, on the main thread.
+    private void recordOpenLatency(long nanos) {
+        MerchantLatencyHistogram openLatency = this.openLatency;
+        if (openLatency == null) {
+            this.openLatency = openLatency = new MerchantLatencyHistogram();
+        }
+        openLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public MerchantLatencyHistogram getOpenLatency() {
+        return this.openLatency;
+    }
+
+    @Override
+    public boolean removeCustomer(final Player player) {
+        checkNotNull(player, "player");
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    removeCustomer(player);
+                }
+
+            });
+            return this.customers.contains(player);
+        }
+        this.lastAccess = System.currentTimeMillis();
 
         if (this.customers.remove(player)) {
+            this.removeWindow(player);
+            this.api.getCustomerIndex().remove(player.getUniqueId(), this);
             player.closeInventory();
             return true;
         }
@@ -339,6 +1237,35 @@ public class SMerchant implements IMerchant, Merchant {
         return false;
     }
 
+    @Override
+    public boolean reapCustomer(Player player) {
+        checkNotNull(player, "player");
+        if (this.customers.remove(player)) {
+            this.removeWindow(player);
+            this.api.getCustomerIndex().remove(player.getUniqueId(), this);
+            return true;
+        }
+
+        return false;
+    }
+
+    // Removes the window of the customer.
+    private void removeWindow(Player player) {
+        if (this.windowsByProtocol[getProtocolIndex(((CraftPlayer) player).getHandle())].remove(player.getEntityId()) != null) {
+            return;
+        }
+        // The entity id changes if the entity of the player is recreated
+        for (IntObjectMap<SCustomer> windows : this.windowsByProtocol) {
+            for (int i = 0; i < windows.size(); i++) {
+                final SCustomer customer = windows.valueAt(i);
+                if (customer.player.equals(player)) {
+                    windows.remove(customer.entityId);
+                    return;
+                }
+            }
+        }
+    }
+
     @Override
     public boolean hasCustomer(Player player) {
         checkNotNull(player, "player");
@@ -350,6 +1277,44 @@ public class SMerchant implements IMerchant, Merchant {
         return Lists.newArrayList(this.customers);
     }
 
+    @Override
+    public boolean hasImmediateUpdates() {
+        return this.immediateUpdates;
+    }
+
+    @Override
+    public void setImmediateUpdates(final boolean immediate) {
+        if (!Bukkit.isPrimaryThread()) {
+            this.api.getMutationQueue().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    setImmediateUpdates(immediate);
+                }
+
+            });
+            return;
+        }
+        this.immediateUpdates = immediate;
+
+        // Send the pending update now
+        if (immediate && this.api.getUpdateScheduler().cancel(this.updateTask)) {
+            this.updateTask.run();
+        }
+    }
+
+    @Override
+    public ListenableFuture<MerchantSnapshot> snapshotAsync() {
+        return this.api.getWorkers().submit(new Callable<MerchantSnapshot>() {
+
+            @Override
+            public MerchantSnapshot call() throws Exception {
+                return MerchantSnapshot.of(SMerchant.this);
+            }
+
+        });
+    }
+
     @Override
     public MerchantRecipeList getOffers(EntityHuman human) {
         return this.offers;
@@ -382,108 +1347,361 @@ public class SMerchant implements IMerchant, Merchant {
 
     private void sendTitleUpdate() {
         // Re-send the open window message to update the window name
-        for (Player customer : this.customers) {
-            final EntityPlayer player0 = ((CraftPlayer) customer).getHandle();
-            player0.playerConnection.sendPacket(
-                    new PacketPlayOutOpenWindow(player0.activeContainer.windowId, 6, this.sendTitle, 3, true));
-            player0.updateInventory(player0.activeContainer);
+        for (IntObjectMap<SCustomer> windows : this.windowsByProtocol) {
+            for (int i = 0; i < windows.size(); i++) {
+                final SCustomer customer = windows.valueAt(i);
+                customer.connection.sendPacket(new PacketPlayOutOpenWindow(customer.windowId, 6, this.sendTitle, 3, true));
+                ((CraftPlayer) customer.player).getHandle().updateInventory(customer.container);
+            }
         }
     }
 
-    // Called when the merchant requires a update
+    // Called when the merchant requires a update, the update will be
+    // send at the end of the tick unless immediate updates are enabled
     void sendUpdate() {
+        // The merchants that share the offers need to update as well
+        if (this.derived != null) {
+            for (SMerchant merchant : this.derived) {
+                merchant.sendUpdate();
+            }
+        }
+
         if (this.customers.isEmpty()) {
             return;
         }
 
-        if (SPIGOT) {
-            final Collection<EntityPlayer>[] collections = split(this.customers);
+        if (this.immediateUpdates) {
+            this.sendUpdateNow();
+        } else {
+            this.api.getUpdateScheduler().schedule(this.updateTask);
+        }
+    }
 
-            // Copy the uses fields if needed
-            if (collections[1] != null || collections[2] != null || collections[3] != null) {
-                for (Object offer : this.offers) {
-                    ((SMerchantOffer) offer).copyUses();
-                }
+    // Sends the offer list to all the customers
+    private void sendUpdateNow() {
+        if (this.customers.isEmpty()) {
+            return;
+        }
+
+        // The customers are already grouped by the protocol
+        // version, every group shares the encoded offers
+        for (int i = 0; i < PROTOCOLS.length; i++) {
+            final IntObjectMap<SCustomer> windows = this.windowsByProtocol[i];
+            if (!windows.isEmpty()) {
+                this.sendUpdateWithProtocol(i, windows);
             }
+        }
+    }
 
-            if (collections[0] != null) {
-                this.sendUpdateWithProtocol(27, collections[0]);
+    // Called when the offer list changed in a way that affects the encoded offers
+    void invalidateOffers() {
+        this.offersVersion++;
+        Arrays.fill(this.payloads, null);
+
+        // The merchants that override the offers of the template encode them themselves
+        if (this.derived != null) {
+            for (SMerchant merchant : this.derived) {
+                merchant.invalidateOffers();
             }
-            if (collections[1] != null) {
-                sendUpdateWithProtocol(28, collections[1]);
+        }
+    }
+
+    /**
+     * Gets the recipe list encoded for the protocol version, the list will
+     * only be encoded again if it changed since the last call.
+     *
+     * @param index The index of the protocol version
+     * @return The encoded recipe list
+     */
+    private byte[] getPayload(int index) {
+        // The template keeps the payloads of the shared offers, unless this merchant overrides them
+        if (this.template != null && !this.hasOverrides()) {
+            return this.template.getPayload(index);
+        }
+
+        if (this.payloadsVersion != this.offersVersion) {
+            Arrays.fill(this.payloads, null);
+            this.payloadsVersion = this.offersVersion;
+        }
+
+        byte[] payload = this.payloads[index];
+        if (payload == null) {
+            if (this.hasOwnUses()) {
+                // The own uses aren't part of the key, so the payload cannot be shared
+                payload = this.encodeOwnOffers(this.offers, PROTOCOLS[index]);
+            } else {
+                // Merchants with the same offers can share the payload
+                final MerchantPayloadCache.Key key = createPayloadKey(this.offers, PROTOCOLS[index]);
+                payload = this.api.getPayloadCache().get(key);
+
+                if (payload == null) {
+                    payload = this.encodeOffers(this.offers, PROTOCOLS[index]);
+                    this.api.getPayloadCache().put(key, payload);
+                }
             }
-            if (collections[2] != null) {
-                sendUpdateWithProtocol(29, collections[2]);
+
+            this.payloads[index] = payload;
+            this.payloadSize = payload.length;
+        }
+        return payload;
+    }
+
+    /**
+     * Gets the recipe list encoded for the protocol version and the customer.
+     * Offers with customer uses are different for every customer, so then
+     * the list will be encoded every time.
+     *
+     * @param index The index of the protocol version
+     * @param customer The customer
+     * @return The encoded recipe list
+     */
+    private byte[] getPayload(int index, Player customer) {
+        if (!this.hasCustomerUses()) {
+            return this.getPayload(index);
+        }
+
+        final UUID previous = SMerchantOffer.setStockContext(customer.getUniqueId());
+        try {
+            return this.encodeOwnOffers(this.offers, PROTOCOLS[index]);
+        } finally {
+            SMerchantOffer.setStockContext(previous);
+        }
+    }
+
+    /**
+     * Encodes the offers on a worker for the protocol versions, as
+     * they will be once the added offers are added.
+     *
+     * @param added The offers that will be added
+     * @param indices The indices of the protocol versions
+     * @return The future of the encoded offer lists
+     */
+    private ListenableFuture<List<PreparedPayload>> preparePayloads(List<MerchantOffer> added,
+            Collection<Integer> indices) {
+        // Copy the offers and indices, the caller may modify them while the worker reads them
+        final List<MerchantOffer> added0 = ImmutableList.copyOf(added);
+        final List<Integer> indices0 = ImmutableList.copyOf(indices);
+
+        return this.api.getWorkers().submit(new Callable<List<PreparedPayload>>() {
+
+            @Override
+            public List<PreparedPayload> call() throws Exception {
+                // The evicted offers can only be restored and the own uses only be encoded on the main thread
+                if (isEvicted() || hasOwnUses()) {
+                    return Collections.emptyList();
+                }
+
+                final SMerchantRecipeList offers = new SMerchantRecipeList();
+                for (MerchantOffer offer : Iterables.<MerchantOffer>concat(getOffersView(), added0)) {
+                    // The offers are encoded for every customer
+                    if (((SMerchantOffer) offer).hasCustomerUses()) {
+                        return Collections.emptyList();
+                    }
+                    if (!offers.contains(offer)) {
+                        offers.add(offer);
+                    }
+                }
+
+                final List<PreparedPayload> payloads = Lists.newArrayList();
+                for (int index : indices0) {
+                    final int protocol = PROTOCOLS[index];
+                    // The uses are copied into the offers for these
+                    // versions, that may only be done on the main thread
+                    if (protocol >= 28) {
+                        continue;
+                    }
+                    // The key is created first, so changes during the encoding result in a different key
+                    final MerchantPayloadCache.Key key = createPayloadKey(offers, protocol);
+                    byte[] payload = api.getPayloadCache().get(key);
+                    if (payload == null) {
+                        payload = encodeOffers(offers, protocol);
+                    }
+                    payloads.add(new PreparedPayload(key, index, payload));
+                }
+                return payloads;
             }
-            if (collections[3] != null) {
-                sendUpdateWithProtocol(47, collections[3]);
+
+        });
+    }
+
+    // Uses the payloads that were prepared on a worker, if the offers didn't change since.
+    private void adoptPayloads(List<PreparedPayload> prepared) {
+        if (prepared.isEmpty()) {
+            return;
+        }
+        this.loadOffers();
+        if (this.template != null) {
+            return;
+        }
+        if (this.payloadsVersion != this.offersVersion) {
+            Arrays.fill(this.payloads, null);
+            this.payloadsVersion = this.offersVersion;
+        }
+        for (PreparedPayload payload : prepared) {
+            if (this.payloads[payload.index] == null &&
+                    payload.key.equals(createPayloadKey(this.offers, PROTOCOLS[payload.index]))) {
+                this.api.getPayloadCache().put(payload.key, payload.payload);
+                this.payloads[payload.index] = payload.payload;
+                this.payloadSize = payload.payload.length;
             }
-        } else {
-            sendUpdateWithSerializer(new PacketDataSerializer(Unpooled.buffer()),
-                    Collections2.transform(this.customers, new Function<Player, EntityPlayer>() {
+        }
+    }
 
-                        @Override
-                        public EntityPlayer apply(Player player) {
-                            return ((CraftPlayer) player).getHandle();
-                        }
+    // Gets the index of the protocol version of the player.
+    private static int getProtocolIndex(EntityPlayer player) {
+        if (!SPIGOT) {
+            return 0;
+        }
+        final int version = player.playerConnection.networkManager.getVersion();
+        return version < 28 ? 0 : version < 29 ? 1 : version < 47 ? 2 : 3;
+    }
 
-                    }));
+    // Creates the empty customer groups for the protocol versions.
+    private static IntObjectMap<SCustomer>[] createProtocolGroups() {
+        final IntObjectMap<SCustomer>[] groups = new IntObjectMap[PROTOCOLS.length];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = new IntObjectMap<SCustomer>();
         }
+        return groups;
     }
 
-    private void sendUpdateWithProtocol(int protocol, Iterable<EntityPlayer> players) {
-        sendUpdateWithSerializer(new PacketDataSerializer(Unpooled.buffer(), protocol), players);
+    // Gets whether one of the offers has customer uses.
+    private boolean hasCustomerUses() {
+        for (Object recipe : this.offers) {
+            if (((SMerchantOffer) recipe).hasCustomerUses()) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void sendUpdateWithSerializer(PacketDataSerializer serializer, Iterable<EntityPlayer> players) {
-        // Write the recipe list
-        this.offers.a(serializer);
+    // Encodes the recipe list with the own uses of this merchant, only on the main thread.
+    private byte[] encodeOwnOffers(SMerchantRecipeList offers, int protocol) {
+        final SMerchant previous = SMerchantOffer.setUsesContext(this);
+        try {
+            return this.encodeOffers(offers, protocol);
+        } finally {
+            SMerchantOffer.setUsesContext(previous);
+        }
+    }
+
+    // Encodes the recipe list for the protocol version.
+    private byte[] encodeOffers(SMerchantRecipeList offers, int protocol) {
+        // The pooled buffer is sized from the last payload, so that it rarely grows
+        final ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer(Math.max(MIN_PAYLOAD_CAPACITY, this.payloadSize));
+        try {
+            final PacketDataSerializer serializer;
+            if (protocol == -1) {
+                serializer = new PacketDataSerializer(buf);
+            } else {
+                serializer = new PacketDataSerializer(buf, protocol);
+
+                // Copy the uses fields if needed
+                if (protocol >= 28) {
+                    for (Object offer : offers) {
+                        ((SMerchantOffer) offer).copyUses();
+                    }
+                }
+            }
+            offers.a(serializer);
+
+            // The packets may still be send after the payload changed again,
+            // so only the encoded bytes are copied out of the pooled buffer
+            final byte[] payload = new byte[buf.readableBytes()];
+            buf.readBytes(payload);
+            return payload;
+        } finally {
+            buf.release();
+        }
+    }
+
+    // Creates the key that identifies the current state of the offers.
+    private static MerchantPayloadCache.Key createPayloadKey(SMerchantRecipeList recipes, int variant) {
+        final Object[] offers = recipes.toArray();
+        final int[] versions = new int[offers.length];
+        for (int i = 0; i < offers.length; i++) {
+            versions[i] = ((SMerchantOffer) offers[i]).getVersion();
+        }
+        return new MerchantPayloadCache.Key(offers, versions, variant);
+    }
+
+    private void sendUpdateWithProtocol(int index, IntObjectMap<SCustomer> windows) {
+        // Get the encoded recipe list, shared by all the packets
+        // unless the customers have their own uses
+        final ByteBuf shared = this.hasCustomerUses() ? null : Unpooled.wrappedBuffer(this.getPayload(index));
 
         // Send a packet to all the players
-        for (EntityPlayer player0 : players) {
+        for (int i = 0; i < windows.size(); i++) {
+            final SCustomer customer = windows.valueAt(i);
+
             // Every player has a different window id
-            final PacketDataSerializer content1 = new PacketDataSerializer(Unpooled.buffer());
-            content1.writeInt(player0.activeContainer.windowId);
-            content1.writeBytes(serializer);
+            final ByteBuf payload = shared != null ? shared : Unpooled.wrappedBuffer(this.getPayload(index, customer.player));
+            final PacketDataSerializer content = createContent(customer, payload);
+            customer.connection.sendPacket(new PacketPlayOutCustomPayload("MC|TrList", content));
+        }
+    }
 
-            player0.playerConnection.sendPacket(new PacketPlayOutCustomPayload("MC|TrList", content1));
+    /**
+     * Creates the content of a MC|TrList message for the window of the customer. The
+     * encoded window id is put in front of the encoded offer list without copying either.
+     *
+     * @param customer The customer
+     * @param payload The encoded offer list
+     * @return The content
+     */
+    private static PacketDataSerializer createContent(SCustomer customer, ByteBuf payload) {
+        return new PacketDataSerializer(Unpooled.wrappedBuffer(customer.windowHeader.duplicate(), payload.duplicate()));
+    }
+
+    // A offer list that was encoded on a worker for a protocol version
+    private static final class PreparedPayload {
+
+        private final MerchantPayloadCache.Key key;
+        private final int index;
+        private final byte[] payload;
+
+        private PreparedPayload(MerchantPayloadCache.Key key, int index, byte[] payload) {
+            this.key = key;
+            this.index = index;
+            this.payload = payload;
         }
     }
 
-    private Collection<EntityPlayer>[] split(Iterable<Player> players) {
-        Collection<EntityPlayer> list0 = null;
-        Collection<EntityPlayer> list1 = null;
-        Collection<EntityPlayer> list2 = null;
-        Collection<EntityPlayer> list3 = null;
+    // The offers of a evicted merchant
+    private static final class EvictedOffers {
 
-        for (Player player : players) {
-            final EntityPlayer player0 = ((CraftPlayer) player).getHandle();
+        // The snapshot record of the offers
+        private final byte[] record;
 
-            final int version = player0.playerConnection.networkManager.getVersion();
-            if (version < 28) {
-                if (list0 == null) {
-                    list0 = Lists.newArrayList();
-                }
-                list0.add(player0);
-            } else if (version < 29) {
-                if (list1 == null) {
-                    list1 = Lists.newArrayList();
-                }
-                list1.add(player0);
-            } else if (version < 47) {
-                if (list2 == null) {
-                    list2 = Lists.newArrayList();
-                }
-                list2.add(player0);
-            } else {
-                if (list3 == null) {
-                    list3 = Lists.newArrayList();
+        // The offers themselves, reused if they are still referenced elsewhere
+        private final List<WeakReference<SMerchantOffer>> offers;
+
+        private EvictedOffers(byte[] record, List<WeakReference<SMerchantOffer>> offers) {
+            this.record = record;
+            this.offers = offers;
+        }
+
+        // Gets the offers, the offers that were collected are decoded from the record.
+        private List<SMerchantOffer> restore(SItemCodec codec) {
+            final List<SMerchantOffer> offers = Lists.newArrayListWithCapacity(this.offers.size());
+            List<MerchantSnapshot.Offer> snapshots = null;
+
+            for (int i = 0; i < this.offers.size(); i++) {
+                SMerchantOffer offer = this.offers.get(i).get();
+                if (offer == null) {
+                    // Only decode the record if one of the offers was collected
+                    if (snapshots == null) {
+                        try {
+                            snapshots = MerchantSnapshotReader.decode(this.record, codec).getOffers();
+                        } catch (IOException e) {
+                            throw new IllegalStateException("unable to restore the evicted offers", e);
+                        }
+                    }
+                    offer = SMerchantPersistence.createOffer(snapshots.get(i));
                 }
-                list3.add(player0);
+                offers.add(offer);
             }
+            return offers;
         }
-
-        // list0 < 28; list1 < 29; list3 < 47; list4 >= 47
-        return new Collection[] { list0, list1, list2, list3 };
     }
 }
@@ -18,28 +18,34 @@
  */
 package me.cybermaxke.merchants.v17r4;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.Collections;
 import java.util.Set;
+import java.util.UUID;
 import java.util.WeakHashMap;
 
+import org.bukkit.Bukkit;
 import org.bukkit.craftbukkit.v1_7_R4.inventory.CraftItemStack;
 
 import net.minecraft.server.v1_7_R4.ItemStack;
 import net.minecraft.server.v1_7_R4.MerchantRecipe;
 
 import me.cybermaxke.merchants.api.MerchantOffer;
+import me.cybermaxke.merchants.api.MerchantSnapshot;
+import me.cybermaxke.merchants.common.UniqueIdIntMap;
 
 import com.google.common.base.Optional;
 
 public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
 
-    private static Field fieldUses;
-    private static Field fieldMaxUses;
+    // The customer whose uses are visible to the vanilla code, set
+    // while the offers are encoded for or used by a customer
+    private static UUID stockContext;
 
-    // Whether they are changed by spigot from private to public
-    private static boolean publicFields;
+    // The merchant whose own uses are visible to the vanilla code, set
+    // while the offers are encoded for or used by a merchant
+    private static SMerchant usesContext;
 
     // The merchants this offer is added to
     private final Set<SMerchant> merchants = Collections.newSetFromMap(new WeakHashMap<SMerchant, Boolean>());
@@ -48,9 +54,28 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
     private final org.bukkit.inventory.ItemStack item2;
     private final org.bukkit.inventory.ItemStack result;
 
+    // The nms copies of the items, converted once because the vanilla
+    // code requests them for every slot change and encode, they are
+    // never modified by it so they can be shared with the workers
+    private final ItemStack nmsItem1;
+    private final ItemStack nmsItem2;
+    private final ItemStack nmsResult;
+
+    // Increased every time the encoded state of the offer changes,
+    // volatile because the offers can be encoded on the workers
+    private volatile int version;
+
+    // The snapshot of the items for the trade events, taken once because
+    // the items never change, only used on the main thread
+    private MerchantSnapshot.Offer snapshot;
+
     private int maxUses0 = -1;
     private int uses0;
 
+    // The uses of every customer, only present if
+    // the customers have their own uses
+    private UniqueIdIntMap customerUses;
+
     private boolean maxUsesChange;
     private boolean usesChange;
 
@@ -60,6 +85,10 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         this.result = result;
         this.item1 = item1;
         this.item2 = item2;
+
+        this.nmsItem1 = convertSafely(item1);
+        this.nmsItem2 = convertSafely(item2);
+        this.nmsResult = convertSafely(result);
     }
 
     // Links the offer to the merchant.
@@ -72,37 +101,62 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         this.merchants.remove(merchant);
     }
 
-    // Copies the uses from this class to the underlying fields
-    void copyUses() {
-        if (fieldUses == null) {
-            try {
-                fieldUses = MerchantRecipe.class.getDeclaredField("uses");
-                fieldMaxUses = MerchantRecipe.class.getDeclaredField("maxUses");
-            } catch (Exception e) {
-                e.printStackTrace();
+    // Invalidates the encoded offers of all the merchants and
+    // sends the new offer list if the lock state changed.
+    private void invalidate(boolean lockChange) {
+        this.version++;
+        for (SMerchant merchant : this.merchants) {
+            merchant.invalidateOffers();
+            if (lockChange) {
+                merchant.sendUpdate();
             }
-
-            publicFields = Modifier.isPublic(fieldUses.getModifiers());
         }
+    }
 
-        try {
-            if (this.usesChange) {
-                if (!publicFields) {
-                    fieldUses.setAccessible(true);
-                }
-                fieldUses.set(this, this.uses0);
-            }
-            if (this.maxUsesChange) {
-                if (!publicFields) {
-                    fieldMaxUses.setAccessible(true);
-                }
-                fieldMaxUses.set(this, this.maxUses0 < 0 ? Integer.MAX_VALUE : this.maxUses0);
-            }
-            this.usesChange = false;
-            this.maxUsesChange = false;
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Copies the uses from this class to the underlying fields
+    void copyUses() {
+        // The customer and merchant uses differ for every encode
+        final boolean contextual = this.customerUses != null || usesContext != null;
+        if (this.usesChange || contextual) {
+            SFieldAccessors.setUses(this, this.getContextUses());
         }
+        if (this.maxUsesChange) {
+            SFieldAccessors.setMaxUses(this, this.maxUses0 < 0 ? Integer.MAX_VALUE : this.maxUses0);
+        }
+        // The uses of a merchant are copied again by the next encode
+        this.usesChange = usesContext != null;
+        this.maxUsesChange = false;
+    }
+
+    /**
+     * Sets the customer whose uses should be visible to the
+     * vanilla code, offers without customer uses ignore it.
+     *
+     * @param customer The unique id of the customer, or null
+     * @return The previous customer
+     */
+    static UUID setStockContext(UUID customer) {
+        final UUID previous = stockContext;
+        stockContext = customer;
+        return previous;
+    }
+
+    /**
+     * Sets the merchant whose own uses should be visible to the vanilla
+     * code, offers whose uses aren't counted by the merchant ignore it.
+     *
+     * @param merchant The merchant, or null
+     * @return The previous merchant
+     */
+    static SMerchant setUsesContext(SMerchant merchant) {
+        final SMerchant previous = usesContext;
+        usesContext = merchant;
+        return previous;
+    }
+
+    // Gets the version of the encoded state of the offer.
+    int getVersion() {
+        return this.version;
     }
 
     @Override
@@ -124,6 +178,11 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         return this.result.clone();
     }
 
+    // Gets the amount of the result without copying the item
+    int getResultAmount() {
+        return this.result.getAmount();
+    }
+
     @Override
     public int getMaxUses() {
         return this.maxUses0;
@@ -144,12 +203,9 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         // Get the state after
         boolean locked1 = this.isLocked();
 
-        // Send the new offer list
-        if (locked0 != locked1) {
-            for (SMerchant merchant : this.merchants) {
-                merchant.sendUpdate();
-            }
-        }
+        // The uses are encoded, so the merchants need to encode again,
+        // the lock state of any customer may have changed
+        this.invalidate(locked0 != locked1 || this.customerUses != null);
     }
 
     @Override
@@ -179,12 +235,8 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         // Get the state after
         boolean locked1 = isLocked();
 
-        // Send the new offer list
-        if (locked0 != locked1) {
-            for (SMerchant merchant : this.merchants) {
-                merchant.sendUpdate();
-            }
-        }
+        // The uses are encoded, so the merchants need to encode again
+        this.invalidate(locked0 != locked1);
     }
 
     @Override
@@ -196,21 +248,98 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
 
     @Override
     public boolean isLocked() {
-        return this.maxUses0 >= 0 && this.uses0 >= this.maxUses0;
+        return this.isLocked(this.uses0);
+    }
+
+    boolean isLocked(int uses) {
+        return this.maxUses0 >= 0 && uses >= this.maxUses0;
     }
 
     @Override
-    public ItemStack getBuyItem1() {
-        return convertSafely(this.item1);
+    public boolean hasCustomerUses() {
+        return this.customerUses != null;
     }
 
     @Override
-    public ItemStack getBuyItem2() {
-        if (this.item2 == null) {
-            return null;
+    public void setCustomerUses(boolean customerUses) {
+        if (this.hasCustomerUses() == customerUses) {
+            return;
         }
 
-        return convertSafely(this.item2);
+        this.customerUses = customerUses ? new UniqueIdIntMap() : null;
+        // The shared uses have to be copied again
+        this.usesChange = true;
+
+        // The encoded uses depend on the customer now, or not anymore
+        this.invalidate(true);
+    }
+
+    @Override
+    public int getUses(UUID customer) {
+        checkNotNull(customer, "customer");
+        if (this.customerUses == null) {
+            return this.uses0;
+        }
+        return this.customerUses.get(customer, 0);
+    }
+
+    @Override
+    public void setUses(UUID customer, int uses) {
+        checkNotNull(customer, "customer");
+        if (this.customerUses == null) {
+            this.setUses(uses);
+            return;
+        }
+
+        final int uses0 = this.customerUses.get(customer, 0);
+        if (uses0 == uses) {
+            return;
+        }
+
+        // Customers without uses don't need a entry
+        if (uses == 0) {
+            this.customerUses.remove(customer);
+        } else {
+            this.customerUses.put(customer, uses);
+        }
+
+        // The uses are encoded, so the merchants need to encode again
+        this.invalidate(this.isLocked(uses0) != this.isLocked(uses));
+    }
+
+    @Override
+    public void addUses(UUID customer, int uses) {
+        if (uses != 0) {
+            this.setUses(customer, this.getUses(customer) + uses);
+        }
+    }
+
+    @Override
+    public boolean isLocked(UUID customer) {
+        return this.isLocked(this.getUses(customer));
+    }
+
+    // Gets the uses of the customer that is visible to the vanilla code.
+    private int getContextUses() {
+        if (this.customerUses != null && stockContext != null) {
+            return this.customerUses.get(stockContext, 0);
+        }
+        // The context is only set on the main thread, the workers ignore it
+        final SMerchant merchant = usesContext;
+        if (merchant != null && Bukkit.isPrimaryThread()) {
+            return merchant.getUses(this);
+        }
+        return this.uses0;
+    }
+
+    @Override
+    public ItemStack getBuyItem1() {
+        return this.nmsItem1;
+    }
+
+    @Override
+    public ItemStack getBuyItem2() {
+        return this.nmsItem2;
     }
 
     @Override
@@ -220,12 +349,16 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
 
     @Override
     public ItemStack getBuyItem3() {
-        return convertSafely(this.result);
+        return this.nmsResult;
     }
 
     @Override
     public void f() {
-        addUses(1);
+        if (this.customerUses != null && stockContext != null) {
+            this.addUses(stockContext, 1);
+        } else if (usesContext == null || !usesContext.addOwnUses(this, 1)) {
+            this.addUses(1);
+        }
     }
 
     @Override
@@ -235,7 +368,16 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
 
     @Override
     public boolean g() {
-        return isLocked();
+        return this.isLocked(this.getContextUses());
+    }
+
+    // Takes a snapshot of the offer with the uses, only the counters
+    // are copied, the items are shared with the previous snapshots
+    MerchantSnapshot.Offer snapshot(int uses) {
+        if (this.snapshot == null) {
+            this.snapshot = MerchantSnapshot.Offer.of(this);
+        }
+        return this.snapshot.withUses(uses, this.getMaxUses(), this.hasCustomerUses());
     }
 
     @SuppressWarnings("CloneDoesntCallSuperClone")
@@ -248,6 +390,7 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         final SMerchantOffer clone = new SMerchantOffer(result, item1, item2);
         clone.maxUses0 = this.maxUses0;
         clone.uses0 = this.uses0;
+        clone.customerUses = this.customerUses != null ? this.customerUses.copy() : null;
 
         return clone;
     }
@@ -0,0 +1,52 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.v18r3;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import org.bukkit.entity.Player;
+
+import net.minecraft.server.v1_8_R3.PlayerConnection;
+
+/**
+ * The window of a merchant that is opened for a customer, only used on the
+ * main thread. The window id is the one of the merchant window, even if the
+ * customer opened another window since.
+ */
+final class SCustomer {
+
+    final Player player;
+    final int entityId;
+    final PlayerConnection connection;
+    final SContainerMerchant container;
+    final int windowId;
+
+    // The window id that is put in front of the offer lists, encoded once
+    final ByteBuf windowHeader;
+
+    SCustomer(Player player, PlayerConnection connection, SContainerMerchant container, int windowId) {
+        this.player = player;
+        this.entityId = player.getEntityId();
+        this.connection = connection;
+        this.container = container;
+        this.windowId = windowId;
+        this.windowHeader = Unpooled.unreleasableBuffer(Unpooled.buffer(4, 4).writeInt(windowId));
+    }
+}
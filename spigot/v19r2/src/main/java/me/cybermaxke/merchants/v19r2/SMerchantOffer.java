@@ -18,21 +18,35 @@
  */
 package me.cybermaxke.merchants.v19r2;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.Collections;
 import java.util.Set;
+import java.util.UUID;
 import java.util.WeakHashMap;
 
 import me.cybermaxke.merchants.api.MerchantOffer;
+import me.cybermaxke.merchants.api.MerchantSnapshot;
+import me.cybermaxke.merchants.common.UniqueIdIntMap;
 
 import net.minecraft.server.v1_9_R2.ItemStack;
 import net.minecraft.server.v1_9_R2.MerchantRecipe;
 
+import org.bukkit.Bukkit;
 import org.bukkit.craftbukkit.v1_9_R2.inventory.CraftItemStack;
 
 import com.google.common.base.Optional;
 
 public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
 
+    // The customer whose uses are visible to the vanilla code, set
+    // while the offers are encoded for or used by a customer
+    private static UUID stockContext;
+
+    // The merchant whose own uses are visible to the vanilla code, set
+    // while the offers are encoded for or used by a merchant
+    private static SMerchant usesContext;
+
     // The merchants this offer is added to
     private final Set<SMerchant> merchants = Collections.newSetFromMap(new WeakHashMap<SMerchant, Boolean>());
 
@@ -40,15 +54,38 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
     private final org.bukkit.inventory.ItemStack item2;
     private final org.bukkit.inventory.ItemStack result;
 
+    // The nms copies of the items, converted once because the vanilla
+    // code requests them for every slot change and encode, they are
+    // never modified by it so they can be shared with the workers
+    private final ItemStack nmsItem1;
+    private final ItemStack nmsItem2;
+    private final ItemStack nmsResult;
+
     private int maxUses = -1;
     private int uses;
 
+    // The uses of every customer, only present if
+    // the customers have their own uses
+    private UniqueIdIntMap customerUses;
+
+    // Increased every time the encoded state of the offer changes,
+    // volatile because the offers can be encoded on the workers
+    private volatile int version;
+
+    // The snapshot of the items for the trade events, taken once because
+    // the items never change, only used on the main thread
+    private MerchantSnapshot.Offer snapshot;
+
     SMerchantOffer(org.bukkit.inventory.ItemStack result, org.bukkit.inventory.ItemStack item1, org.bukkit.inventory.ItemStack item2) {
         super(null, null, null);
 
         this.result = result;
         this.item1 = item1;
         this.item2 = item2;
+
+        this.nmsItem1 = convertSafely(item1);
+        this.nmsItem2 = convertSafely(item2);
+        this.nmsResult = convertSafely(result);
     }
 
     // Links the offer to the merchant.
@@ -61,6 +98,49 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         this.merchants.remove(merchant);
     }
 
+    // Invalidates the encoded offers of all the merchants and
+    // sends the new offer list if the lock state changed.
+    private void invalidate(boolean lockChange) {
+        this.version++;
+        for (SMerchant merchant : this.merchants) {
+            merchant.invalidateOffers();
+            if (lockChange) {
+                merchant.sendUpdate();
+            }
+        }
+    }
+
+    /**
+     * Sets the customer whose uses should be visible to the
+     * vanilla code, offers without customer uses ignore it.
+     *
+     * @param customer The unique id of the customer, or null
+     * @return The previous customer
+     */
+    static UUID setStockContext(UUID customer) {
+        final UUID previous = stockContext;
+        stockContext = customer;
+        return previous;
+    }
+
+    /**
+     * Sets the merchant whose own uses should be visible to the vanilla
+     * code, offers whose uses aren't counted by the merchant ignore it.
+     *
+     * @param merchant The merchant, or null
+     * @return The previous merchant
+     */
+    static SMerchant setUsesContext(SMerchant merchant) {
+        final SMerchant previous = usesContext;
+        usesContext = merchant;
+        return previous;
+    }
+
+    // Gets the version of the encoded state of the offer.
+    int getVersion() {
+        return this.version;
+    }
+
     @Override
     public org.bukkit.inventory.ItemStack getFirstItem() {
         return this.item1.clone();
@@ -80,6 +160,11 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         return this.result.clone();
     }
 
+    // Gets the amount of the result without copying the item
+    int getResultAmount() {
+        return this.result.getAmount();
+    }
+
     @Override
     public int getMaxUses() {
         return this.maxUses;
@@ -98,12 +183,9 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         // Get the state after
         boolean locked1 = isLocked();
 
-        // Send the new offer list
-        if (locked0 != locked1) {
-            for (SMerchant merchant : this.merchants) {
-                merchant.sendUpdate();
-            }
-        }
+        // The uses are encoded, so the merchants need to encode again,
+        // the lock state of any customer may have changed
+        this.invalidate(locked0 != locked1 || this.customerUses != null);
     }
 
     @Override
@@ -131,12 +213,8 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         // Get the state after
         boolean locked1 = isLocked();
 
-        // Send the new offer list
-        if (locked0 != locked1) {
-            for (SMerchant merchant : this.merchants) {
-                merchant.sendUpdate();
-            }
-        }
+        // The uses are encoded, so the merchants need to encode again
+        this.invalidate(locked0 != locked1);
     }
 
     @Override
@@ -148,17 +226,96 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
 
     @Override
     public boolean isLocked() {
-        return this.maxUses >= 0 && this.uses >= this.maxUses;
+        return this.isLocked(this.uses);
+    }
+
+    boolean isLocked(int uses) {
+        return this.maxUses >= 0 && uses >= this.maxUses;
+    }
+
+    @Override
+    public boolean hasCustomerUses() {
+        return this.customerUses != null;
+    }
+
+    @Override
+    public void setCustomerUses(boolean customerUses) {
+        if (this.hasCustomerUses() == customerUses) {
+            return;
+        }
+
+        this.customerUses = customerUses ? new UniqueIdIntMap() : null;
+
+        // The encoded uses depend on the customer now, or not anymore
+        this.invalidate(true);
+    }
+
+    @Override
+    public int getUses(UUID customer) {
+        checkNotNull(customer, "customer");
+        if (this.customerUses == null) {
+            return this.uses;
+        }
+        return this.customerUses.get(customer, 0);
+    }
+
+    @Override
+    public void setUses(UUID customer, int uses) {
+        checkNotNull(customer, "customer");
+        if (this.customerUses == null) {
+            this.setUses(uses);
+            return;
+        }
+
+        final int uses0 = this.customerUses.get(customer, 0);
+        if (uses0 == uses) {
+            return;
+        }
+
+        // Customers without uses don't need a entry
+        if (uses == 0) {
+            this.customerUses.remove(customer);
+        } else {
+            this.customerUses.put(customer, uses);
+        }
+
+        // The uses are encoded, so the merchants need to encode again
+        this.invalidate(this.isLocked(uses0) != this.isLocked(uses));
+    }
+
+    @Override
+    public void addUses(UUID customer, int uses) {
+        if (uses != 0) {
+            this.setUses(customer, this.getUses(customer) + uses);
+        }
+    }
+
+    @Override
+    public boolean isLocked(UUID customer) {
+        return this.isLocked(this.getUses(customer));
+    }
+
+    // Gets the uses of the customer that is visible to the vanilla code.
+    private int getContextUses() {
+        if (this.customerUses != null && stockContext != null) {
+            return this.customerUses.get(stockContext, 0);
+        }
+        // The context is only set on the main thread, the workers ignore it
+        final SMerchant merchant = usesContext;
+        if (merchant != null && Bukkit.isPrimaryThread()) {
+            return merchant.getUses(this);
+        }
+        return this.uses;
     }
 
     @Override
     public ItemStack getBuyItem1() {
-        return convertSafely(this.item1);
+        return this.nmsItem1;
     }
 
     @Override
     public ItemStack getBuyItem2() {
-        return convertSafely(this.item2);
+        return this.nmsItem2;
     }
 
     @Override
@@ -168,12 +325,12 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
 
     @Override
     public ItemStack getBuyItem3() {
-        return convertSafely(this.result);
+        return this.nmsResult;
     }
 
     @Override
     public int e() {
-        return this.uses;
+        return this.getContextUses();
     }
 
     @Override
@@ -183,7 +340,11 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
 
     @Override
     public void g() {
-        addUses(1);
+        if (this.customerUses != null && stockContext != null) {
+            this.addUses(stockContext, 1);
+        } else if (usesContext == null || !usesContext.addOwnUses(this, 1)) {
+            this.addUses(1);
+        }
     }
 
     @Override
@@ -193,7 +354,7 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
 
     @Override
     public boolean h() {
-        return isLocked();
+        return this.isLocked(this.getContextUses());
     }
 
     @Override
@@ -201,6 +362,15 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         return false;
     }
 
+    // Takes a snapshot of the offer with the uses, only the counters
+    // are copied, the items are shared with the previous snapshots
+    MerchantSnapshot.Offer snapshot(int uses) {
+        if (this.snapshot == null) {
+            this.snapshot = MerchantSnapshot.Offer.of(this);
+        }
+        return this.snapshot.withUses(uses, this.getMaxUses(), this.hasCustomerUses());
+    }
+
     @SuppressWarnings("CloneDoesntCallSuperClone")
     @Override
     public SMerchantOffer clone() {
@@ -211,6 +381,7 @@ public class SMerchantOffer extends MerchantRecipe implements MerchantOffer {
         final SMerchantOffer clone = new SMerchantOffer(result, item1, item2);
         clone.maxUses = this.maxUses;
         clone.uses = this.uses;
+        clone.customerUses = this.customerUses != null ? this.customerUses.copy() : null;
 
         return clone;
     }
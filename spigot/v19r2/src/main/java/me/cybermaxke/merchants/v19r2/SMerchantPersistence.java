@@ -0,0 +1,67 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.v19r2;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantOffer;
+import me.cybermaxke.merchants.api.MerchantSnapshot;
+import me.cybermaxke.merchants.common.AbstractMerchantPersistence;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+public class SMerchantPersistence extends AbstractMerchantPersistence {
+
+    private final SMerchantAPI api;
+
+    SMerchantPersistence(SMerchantAPI api, SItemCodec codec, ListeningExecutorService workers, Executor mainThread) {
+        super(codec, workers, mainThread);
+        this.api = api;
+    }
+
+    @Override
+    public Merchant restore(MerchantSnapshot snapshot) {
+        checkNotNull(snapshot, "snapshot");
+
+        final SMerchant merchant = new SMerchant(this.api, snapshot.getUniqueId(), snapshot.getTitle(), snapshot.isTitleJson());
+        final List<MerchantOffer> offers = Lists.newArrayListWithCapacity(snapshot.getOffers().size());
+        for (MerchantSnapshot.Offer offer : snapshot.getOffers()) {
+            offers.add(createOffer(offer));
+        }
+        merchant.addOffers(offers);
+        return merchant;
+    }
+
+    // Creates a offer from the snapshot of the offer.
+    static SMerchantOffer createOffer(MerchantSnapshot.Offer snapshot) {
+        // The items of the snapshot are already copies
+        final SMerchantOffer offer = new SMerchantOffer(snapshot.getResultItem(), snapshot.getFirstItem(),
+                snapshot.getSecondItem().orNull());
+        offer.setMaxUses(snapshot.getMaxUses());
+        offer.setUses(snapshot.getUses());
+        offer.setCustomerUses(snapshot.hasCustomerUses());
+        return offer;
+    }
+
+}
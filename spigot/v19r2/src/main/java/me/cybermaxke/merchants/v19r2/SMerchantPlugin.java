@@ -18,15 +18,172 @@
  */
 package me.cybermaxke.merchants.v19r2;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import javax.annotation.Nullable;
+
 import me.cybermaxke.merchants.api.Merchants;
+import me.cybermaxke.merchants.common.MappedTradeJournal;
+import me.cybermaxke.merchants.common.MerchantCustomerAudit;
+import me.cybermaxke.merchants.common.MerchantCustomerReaper;
+import me.cybermaxke.merchants.common.MerchantEvictor;
+import me.cybermaxke.merchants.common.MerchantLatencyReporter;
+import me.cybermaxke.merchants.common.MerchantMutationQueue;
+import me.cybermaxke.merchants.common.MerchantTradeBatcher;
+import me.cybermaxke.merchants.common.MerchantTradeDispatcher;
+import me.cybermaxke.merchants.common.MerchantTradeDispatcher.Backpressure;
+import me.cybermaxke.merchants.common.MerchantUpdateScheduler;
 
 import org.bukkit.plugin.java.JavaPlugin;
 
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.util.ResourceLeakDetector;
+
 public class SMerchantPlugin extends JavaPlugin {
 
+    private SMerchantAPI api;
+
     @Override
     public void onEnable() {
-        Merchants.set(new SMerchantAPI());
+        this.saveDefaultConfig();
+
+        // Resolve the nms fields, the merchants cannot work without them
+        try {
+            SFieldAccessors.init();
+        } catch (IllegalStateException e) {
+            this.getLogger().log(Level.SEVERE, "Unsupported server version, disabling the merchants", e);
+            this.getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        this.api = new SMerchantAPI(this.createTradeDispatcher(), new MerchantTradeBatcher(this.getLogger()),
+                new MerchantMutationQueue(this.getLogger()), new MerchantUpdateScheduler(this.getLogger()),
+                this.createTradeJournal(), this.createWorkers(), new Executor() {
+
+                    @Override
+                    public void execute(Runnable task) {
+                        getServer().getScheduler().runTask(SMerchantPlugin.this, task);
+                    }
+
+                });
+        Merchants.set(this.api);
+
+        // Track every pooled buffer that is used to encode the merchant packets,
+        // the buffers that are never released are reported by netty
+        if (this.getConfig().getBoolean("debug", false)) {
+            ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        }
+
+        // Apply the mutations from other threads every tick, before the updates are send
+        this.getServer().getScheduler().runTaskTimer(this, this.api.getMutationQueue(), 1L, 1L);
+        // Send the collected merchant updates every tick
+        this.getServer().getScheduler().runTaskTimer(this, this.api.getUpdateScheduler(), 1L, 1L);
+        // Pass the collected trades to the batch listeners every tick
+        this.getServer().getScheduler().runTaskTimer(this, this.api.getTradeBatcher(), 1L, 1L);
+
+        // Remove the players from their merchant when they leave
+        this.getServer().getPluginManager().registerEvents(new MerchantCustomerReaper(this.api.getCustomerIndex()), this);
+
+        // Search for the customers that should have been removed
+        if (this.getConfig().getBoolean("customer-audit.enabled", true)) {
+            final long interval = Math.max(1L, this.getConfig().getLong("customer-audit.interval", 6000L));
+            this.getServer().getScheduler().runTaskTimer(this,
+                    new MerchantCustomerAudit(this.api.getCustomerIndex(), this.api.getRegistry(), this.getLogger()), interval, interval);
+        }
+
+        // Evict the offers of the idle registered merchants
+        if (this.getConfig().getBoolean("eviction.enabled", false)) {
+            final long idleTime = Math.max(1L, this.getConfig().getLong("eviction.idle-time", 10L));
+            final long interval = Math.max(1L, this.getConfig().getLong("eviction.check-interval", 600L));
+            this.getServer().getScheduler().runTaskTimer(this,
+                    new MerchantEvictor(this.api.getRegistry(), idleTime, TimeUnit.MINUTES), interval, interval);
+        }
+
+        // Report the open latencies of the registered merchants
+        if (this.getConfig().getBoolean("open-latency.report", false)) {
+            final long interval = Math.max(1L, this.getConfig().getLong("open-latency.report-interval", 6000L));
+            final int limit = Math.max(1, this.getConfig().getInt("open-latency.report-limit", 10));
+            this.getServer().getScheduler().runTaskTimer(this,
+                    new MerchantLatencyReporter(this.api.getRegistry(), this.getLogger(), limit), interval, interval);
+        }
+    }
+
+    @Override
+    public void onDisable() {
+        if (this.api != null) {
+            // Apply the mutations and send the updates that are still pending
+            this.api.getMutationQueue().run();
+            this.api.getUpdateScheduler().run();
+            this.api.getTradeBatcher().run();
+            // Finish the trades that are still queued
+            if (!this.api.getTradeDispatcher().shutdown(5L, TimeUnit.SECONDS)) {
+                this.getLogger().warning("The async trade listeners didn't finish in time");
+            }
+            // Finish the work that is still running
+            this.api.getWorkers().shutdown();
+            try {
+                if (!this.api.getWorkers().awaitTermination(5L, TimeUnit.SECONDS)) {
+                    this.getLogger().warning("The merchant workers didn't finish in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Write the last trades to the disk
+            if (this.api.getMappedTradeJournal() != null) {
+                this.api.getMappedTradeJournal().close();
+            }
+        }
+    }
+
+    private MerchantTradeDispatcher createTradeDispatcher() {
+        final int workers = Math.max(1, this.getConfig().getInt("async-trades.workers", 2));
+        final int queueSize = Math.max(1, this.getConfig().getInt("async-trades.queue-size", 1024));
+
+        Backpressure backpressure = Backpressure.CALLER_RUNS;
+        final String value = this.getConfig().getString("async-trades.backpressure");
+        if (value != null) {
+            try {
+                backpressure = Backpressure.valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                this.getLogger().warning("Unknown backpressure " + value + ", using " + backpressure);
+            }
+        }
+
+        return new MerchantTradeDispatcher(this.getLogger(), workers, queueSize, backpressure);
+    }
+
+    private ListeningExecutorService createWorkers() {
+        int threads = this.getConfig().getInt("worker-threads", 0);
+        if (threads <= 0) {
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        }
+        return MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("Merchant Worker #%d").setDaemon(true).build()));
+    }
+
+    @Nullable
+    private MappedTradeJournal createTradeJournal() {
+        if (!this.getConfig().getBoolean("trade-journal.enabled", false)) {
+            return null;
+        }
+
+        final int segmentRecords = Math.max(1, this.getConfig().getInt("trade-journal.segment-records", 65536));
+        final long flushInterval = Math.max(1L, this.getConfig().getLong("trade-journal.flush-interval", 200L));
+
+        try {
+            return new MappedTradeJournal(new File(this.getDataFolder(), "journal"), segmentRecords,
+                    flushInterval, TimeUnit.MILLISECONDS, this.getLogger());
+        } catch (IOException e) {
+            this.getLogger().log(Level.SEVERE, "Unable to open the trade journal, the trades will not be recorded", e);
+            return null;
+        }
     }
 
 }
@@ -0,0 +1,73 @@
+/*
+ * This file is part of MerchantsAPI.
+ *
+ * Copyright (c) Cybermaxke
+ *
+ * MerchantsAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MerchantsAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MerchantsAPI. If not, see <http://www.gnu.org/licenses/>.
+ */
+package me.cybermaxke.merchants.v19r2;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import me.cybermaxke.merchants.api.Merchant;
+import me.cybermaxke.merchants.api.MerchantOffer;
+import me.cybermaxke.merchants.api.MerchantTemplate;
+
+public class SMerchantTemplate implements MerchantTemplate {
+
+    private final SMerchantAPI api;
+
+    // The merchant that holds the shared offers, it's
+    // never exposed so the offers won't be modified
+    private final SMerchant merchant;
+
+    SMerchantTemplate(SMerchantAPI api, String title, boolean jsonTitle, Iterable<MerchantOffer> offers) {
+        this.api = api;
+        this.merchant = new SMerchant(api, title, jsonTitle);
+        this.merchant.addOffers(offers);
+    }
+
+    @Override
+    public String getTitle() {
+        return this.merchant.getTitle();
+    }
+
+    @Override
+    public boolean isTitleJson() {
+        return this.merchant.isTitleJson();
+    }
+
+    @Override
+    public List<MerchantOffer> getOffers() {
+        return this.merchant.getOffers();
+    }
+
+    @Override
+    public int getOffersCount() {
+        return this.merchant.getOffersCount();
+    }
+
+    @Override
+    public Merchant newMerchant() {
+        return this.newMerchant(this.merchant.getTitle(), this.merchant.isTitleJson());
+    }
+
+    @Override
+    public Merchant newMerchant(String title, boolean jsonTitle) {
+        checkNotNull(title, "title");
+        return new SMerchant(this.api, title, jsonTitle, this.merchant);
+    }
+}